@@ -0,0 +1,75 @@
+package com.genonbeta.android.database.benchmark;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import com.genonbeta.android.database.KuickDb;
+import com.genonbeta.android.database.SQLQuery;
+import com.genonbeta.android.database.SQLType;
+import com.genonbeta.android.database.SQLValues;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An in-memory database with a single table whose width is chosen by the benchmark.
+ */
+public class BenchmarkKuickDb extends KuickDb
+{
+    private final SQLValues mValues;
+
+    public BenchmarkKuickDb(int width)
+    {
+        super(new Context(), null, null, 1);
+        mValues = createSchema(width);
+    }
+
+    public static SQLValues createSchema(int width)
+    {
+        SQLValues values = new SQLValues();
+        SQLValues.Table table = values.defineTable(Item.TABLE_NAME)
+                .define(new SQLValues.Column(Item.FIELD_ID, SQLType.INTEGER, false, "primary key"))
+                .define(new SQLValues.Column(Item.FIELD_TITLE, SQLType.TEXT, false))
+                .define(new SQLValues.Column(Item.FIELD_SCORE, SQLType.DOUBLE, false));
+
+        for (int i = 0; i < width; i++)
+            table.define(new SQLValues.Column(Item.getExtraField(i), SQLType.TEXT, true));
+
+        return values;
+    }
+
+    public List<Item> createItems(int firstId, int count, int width)
+    {
+        List<Item> items = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++)
+            items.add(new Item(firstId + i, width));
+
+        return items;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db)
+    {
+        SQLQuery.createTables(db, mValues);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+    {
+    }
+
+    public void populate(int rowCount, int width)
+    {
+        clear();
+        insert(createItems(0, rowCount, width));
+        broadcast();
+    }
+
+    /**
+     * Empties the table without recording a change, as there are no caches to invalidate in the benchmarks.
+     */
+    public void clear()
+    {
+        getWritableDatabase().delete(Item.TABLE_NAME, null, null);
+    }
+}
@@ -0,0 +1,66 @@
+package com.genonbeta.android.database.benchmark;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.genonbeta.android.database.KuickDb;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records changes from several threads while another one keeps broadcasting them, as writers and the thread that
+ * notifies the interface do in an app.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChangeBenchmark
+{
+    private static final String[] TABLES = {"items", "groups", "members", "history"};
+
+    private BenchmarkKuickDb mKuick;
+    private SQLiteDatabase mDatabase;
+
+    @Setup
+    public void setUp()
+    {
+        mKuick = new BenchmarkKuickDb(0);
+        mDatabase = mKuick.getWritableDatabase();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mKuick.close();
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(3)
+    public void append(AppenderState state)
+    {
+        mKuick.append(mDatabase, TABLES[state.next++ & (TABLES.length - 1)], KuickDb.TYPE_UPDATE, 1);
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(1)
+    public void broadcast()
+    {
+        mKuick.broadcast();
+    }
+
+    @State(Scope.Thread)
+    public static class AppenderState
+    {
+        int next;
+    }
+}
@@ -0,0 +1,92 @@
+package com.genonbeta.android.database.benchmark;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import com.genonbeta.android.database.DatabaseObject;
+import com.genonbeta.android.database.KuickDb;
+import com.genonbeta.android.database.Progress;
+import com.genonbeta.android.database.SQLQuery;
+
+/**
+ * A row with a fixed part and a number of text columns that make it as wide as the benchmark needs.
+ */
+public class Item implements DatabaseObject<Void>
+{
+    public static final String TABLE_NAME = "items",
+            FIELD_ID = "id",
+            FIELD_TITLE = "title",
+            FIELD_SCORE = "score";
+
+    public long id;
+    public String title;
+    public double score;
+    public String[] extras;
+
+    public Item()
+    {
+    }
+
+    public Item(long id, int width)
+    {
+        this.id = id;
+        this.title = "Item " + id;
+        this.score = id * 0.5;
+        this.extras = new String[width];
+
+        for (int i = 0; i < width; i++)
+            extras[i] = "Value " + i + " of item " + id;
+    }
+
+    public static String getExtraField(int index)
+    {
+        return "extra" + index;
+    }
+
+    @Override
+    public ContentValues getValues()
+    {
+        ContentValues values = new ContentValues(3 + extras.length);
+
+        values.put(FIELD_ID, id);
+        values.put(FIELD_TITLE, title);
+        values.put(FIELD_SCORE, score);
+
+        for (int i = 0; i < extras.length; i++)
+            values.put(getExtraField(i), extras[i]);
+
+        return values;
+    }
+
+    @Override
+    public SQLQuery.Select getWhere()
+    {
+        return new SQLQuery.Select(TABLE_NAME).setWhere(FIELD_ID + "=?", String.valueOf(id));
+    }
+
+    @Override
+    public void reconstruct(SQLiteDatabase db, KuickDb kuick, ContentValues item)
+    {
+        id = item.getAsLong(FIELD_ID);
+        title = item.getAsString(FIELD_TITLE);
+        score = item.getAsDouble(FIELD_SCORE);
+        extras = new String[item.size() - 3];
+
+        for (int i = 0; i < extras.length; i++)
+            extras[i] = item.getAsString(getExtraField(i));
+    }
+
+    @Override
+    public void onCreateObject(SQLiteDatabase db, KuickDb kuick, Void parent, Progress.Listener listener)
+    {
+    }
+
+    @Override
+    public void onUpdateObject(SQLiteDatabase db, KuickDb kuick, Void parent, Progress.Listener listener)
+    {
+    }
+
+    @Override
+    public void onRemoveObject(SQLiteDatabase db, KuickDb kuick, Void parent, Progress.Listener listener)
+    {
+    }
+}
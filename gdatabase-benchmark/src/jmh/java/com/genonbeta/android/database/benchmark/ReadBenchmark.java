@@ -0,0 +1,80 @@
+package com.genonbeta.android.database.benchmark;
+
+import android.content.ContentValues;
+import com.genonbeta.android.database.KuickDb;
+import com.genonbeta.android.database.RowSet;
+import com.genonbeta.android.database.SQLQuery;
+import com.genonbeta.android.database.exception.ReconstructionFailedException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a table of the given width and row count in the ways the library offers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadBenchmark
+{
+    @Param({"4", "16", "64"})
+    public int width;
+
+    @Param({"100", "10000"})
+    public int rowCount;
+
+    private BenchmarkKuickDb mKuick;
+    private SQLQuery.Select mSelect;
+    private Item mItem;
+    private int mNextId;
+
+    @Setup
+    public void setUp()
+    {
+        mKuick = new BenchmarkKuickDb(width);
+        mKuick.populate(rowCount, width);
+        mSelect = new SQLQuery.Select(Item.TABLE_NAME);
+        mItem = new Item();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mKuick.close();
+    }
+
+    @Benchmark
+    public List<Item> castQuery()
+    {
+        return mKuick.castQuery(mSelect, Item.class);
+    }
+
+    @Benchmark
+    public RowSet getRowSet()
+    {
+        return mKuick.getRowSet(mSelect);
+    }
+
+    @Benchmark
+    public List<ContentValues> getTable()
+    {
+        return mKuick.getTable(mSelect);
+    }
+
+    @Benchmark
+    public Item reconstruct() throws ReconstructionFailedException
+    {
+        mItem.id = mNextId++ % rowCount;
+        mKuick.reconstruct(mItem);
+        return mItem;
+    }
+}
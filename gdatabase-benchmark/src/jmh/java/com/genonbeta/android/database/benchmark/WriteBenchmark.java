@@ -0,0 +1,98 @@
+package com.genonbeta.android.database.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a batch of objects with the bulk operations. The table is brought to the same state before every call so
+ * that each call does the same amount of work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WriteBenchmark
+{
+    @Benchmark
+    public boolean insert(InsertState state)
+    {
+        return state.kuick.insert(state.items);
+    }
+
+    @Benchmark
+    public boolean publish(PublishState state)
+    {
+        return state.kuick.publish(state.items);
+    }
+
+    @Benchmark
+    public boolean remove(RemoveState state)
+    {
+        return state.kuick.remove(state.items);
+    }
+
+    @State(Scope.Thread)
+    public static class BatchState
+    {
+        @Param({"16"})
+        public int width;
+
+        @Param({"100", "1000"})
+        public int batchSize;
+
+        BenchmarkKuickDb kuick;
+        List<Item> items;
+
+        @Setup(Level.Trial)
+        public void setUpTrial()
+        {
+            kuick = new BenchmarkKuickDb(width);
+            items = kuick.createItems(0, batchSize, width);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDownTrial()
+        {
+            kuick.close();
+        }
+    }
+
+    public static class InsertState extends BatchState
+    {
+        @Setup(Level.Invocation)
+        public void setUpInvocation()
+        {
+            kuick.clear();
+        }
+    }
+
+    /**
+     * Half of the batch already exists, so that updates and inserts are both measured.
+     */
+    public static class PublishState extends BatchState
+    {
+        @Setup(Level.Invocation)
+        public void setUpInvocation()
+        {
+            kuick.populate(batchSize / 2, width);
+        }
+    }
+
+    public static class RemoveState extends BatchState
+    {
+        @Setup(Level.Invocation)
+        public void setUpInvocation()
+        {
+            kuick.populate(batchSize, width);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stand-in for the framework class so that the library can run on a plain JVM. Only the parts the library and the
+ * benchmarks use are provided.
+ */
+public final class ContentValues
+{
+    private final HashMap<String, Object> mValues;
+
+    public ContentValues()
+    {
+        mValues = new HashMap<>(8);
+    }
+
+    public ContentValues(int size)
+    {
+        mValues = new HashMap<>(size, 1.0f);
+    }
+
+    public ContentValues(ContentValues from)
+    {
+        mValues = new HashMap<>(from.mValues);
+    }
+
+    public void clear()
+    {
+        mValues.clear();
+    }
+
+    public boolean containsKey(String key)
+    {
+        return mValues.containsKey(key);
+    }
+
+    @Override
+    public boolean equals(Object object)
+    {
+        return object instanceof ContentValues && mValues.equals(((ContentValues) object).mValues);
+    }
+
+    public Object get(String key)
+    {
+        return mValues.get(key);
+    }
+
+    public Boolean getAsBoolean(String key)
+    {
+        Object value = mValues.get(key);
+
+        if (value instanceof Boolean)
+            return (Boolean) value;
+        else if (value instanceof Number)
+            return ((Number) value).intValue() != 0;
+        else if (value instanceof CharSequence)
+            return Boolean.valueOf(value.toString()) || "1".equals(value.toString());
+
+        return null;
+    }
+
+    public byte[] getAsByteArray(String key)
+    {
+        Object value = mValues.get(key);
+        return value instanceof byte[] ? (byte[]) value : null;
+    }
+
+    public Double getAsDouble(String key)
+    {
+        Object value = mValues.get(key);
+
+        try {
+            return value == null ? null : value instanceof Number ? ((Number) value).doubleValue()
+                    : Double.valueOf(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public Float getAsFloat(String key)
+    {
+        Double value = getAsDouble(key);
+        return value == null ? null : value.floatValue();
+    }
+
+    public Integer getAsInteger(String key)
+    {
+        Long value = getAsLong(key);
+        return value == null ? null : value.intValue();
+    }
+
+    public Long getAsLong(String key)
+    {
+        Object value = mValues.get(key);
+
+        try {
+            return value == null ? null : value instanceof Number ? ((Number) value).longValue()
+                    : Long.valueOf(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public String getAsString(String key)
+    {
+        Object value = mValues.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return mValues.hashCode();
+    }
+
+    public Set<String> keySet()
+    {
+        return mValues.keySet();
+    }
+
+    public void put(String key, Boolean value)
+    {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Byte value)
+    {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, byte[] value)
+    {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Double value)
+    {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Float value)
+    {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Integer value)
+    {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Long value)
+    {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Short value)
+    {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, String value)
+    {
+        mValues.put(key, value);
+    }
+
+    public void putAll(ContentValues other)
+    {
+        mValues.putAll(other.mValues);
+    }
+
+    public void putNull(String key)
+    {
+        mValues.put(key, null);
+    }
+
+    public void remove(String key)
+    {
+        mValues.remove(key);
+    }
+
+    public int size()
+    {
+        return mValues.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return mValues.toString();
+    }
+
+    public Set<Map.Entry<String, Object>> valueSet()
+    {
+        return mValues.entrySet();
+    }
+}
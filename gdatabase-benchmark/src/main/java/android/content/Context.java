@@ -0,0 +1,19 @@
+package android.content;
+
+/**
+ * Stand-in for the framework class. Broadcasts go nowhere and are only counted.
+ */
+public class Context
+{
+    private long mBroadcastCount;
+
+    public synchronized long getBroadcastCount()
+    {
+        return mBroadcastCount;
+    }
+
+    public synchronized void sendBroadcast(Intent intent)
+    {
+        mBroadcastCount++;
+    }
+}
@@ -0,0 +1,50 @@
+package android.content;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in for the framework class that keeps the action and the serializable extras.
+ */
+public class Intent
+{
+    private final Map<String, Serializable> mExtras = new HashMap<>();
+    private String mAction;
+
+    public Intent()
+    {
+    }
+
+    public Intent(String action)
+    {
+        mAction = action;
+    }
+
+    public String getAction()
+    {
+        return mAction;
+    }
+
+    public Serializable getSerializableExtra(String name)
+    {
+        return mExtras.get(name);
+    }
+
+    public boolean hasExtra(String name)
+    {
+        return mExtras.containsKey(name);
+    }
+
+    public Intent putExtra(String name, Serializable value)
+    {
+        mExtras.put(name, value);
+        return this;
+    }
+
+    public Intent setAction(String action)
+    {
+        mAction = action;
+        return this;
+    }
+}
@@ -0,0 +1,59 @@
+package android.database;
+
+import java.io.Closeable;
+
+/**
+ * Stand-in for the framework interface with the methods the library uses.
+ */
+public interface Cursor extends Closeable
+{
+    int FIELD_TYPE_NULL = 0;
+    int FIELD_TYPE_INTEGER = 1;
+    int FIELD_TYPE_FLOAT = 2;
+    int FIELD_TYPE_STRING = 3;
+    int FIELD_TYPE_BLOB = 4;
+
+    void close();
+
+    byte[] getBlob(int columnIndex);
+
+    int getColumnCount();
+
+    int getColumnIndex(String columnName);
+
+    int getColumnIndexOrThrow(String columnName) throws IllegalArgumentException;
+
+    String getColumnName(int columnIndex);
+
+    String[] getColumnNames();
+
+    int getCount();
+
+    double getDouble(int columnIndex);
+
+    float getFloat(int columnIndex);
+
+    int getInt(int columnIndex);
+
+    long getLong(int columnIndex);
+
+    int getPosition();
+
+    short getShort(int columnIndex);
+
+    String getString(int columnIndex);
+
+    int getType(int columnIndex);
+
+    boolean isAfterLast();
+
+    boolean isClosed();
+
+    boolean isNull(int columnIndex);
+
+    boolean moveToFirst();
+
+    boolean moveToNext();
+
+    boolean moveToPosition(int position);
+}
@@ -0,0 +1,235 @@
+package android.database.sqlite;
+
+import android.database.Cursor;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the whole result of a query into memory when it is created, like the cursor window of the framework does
+ * for results that fit into it, so that the cost of copying the rows is paid in the same place.
+ */
+public class SQLiteCursor implements Cursor
+{
+    private final String[] mColumnNames;
+    private final List<Object[]> mRows = new ArrayList<>();
+    private int mPosition = -1;
+    private boolean mClosed;
+
+    public SQLiteCursor(SQLiteCursorDriver driver, String editTable, SQLiteQuery query)
+    {
+        this(query.execute());
+    }
+
+    private SQLiteCursor(SQLiteCursor cursor)
+    {
+        mColumnNames = cursor.mColumnNames;
+        mRows.addAll(cursor.mRows);
+    }
+
+    SQLiteCursor(ResultSet resultSet) throws SQLException
+    {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+
+        mColumnNames = new String[columnCount];
+
+        for (int i = 0; i < columnCount; i++)
+            mColumnNames[i] = metaData.getColumnLabel(i + 1);
+
+        while (resultSet.next()) {
+            Object[] row = new Object[columnCount];
+
+            for (int i = 0; i < columnCount; i++) {
+                Object value = resultSet.getObject(i + 1);
+
+                // The driver returns the smallest fitting type, while SQLite only knows of 64-bit integers.
+                if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+                    value = ((Number) value).longValue();
+                else if (value instanceof Float)
+                    value = ((Float) value).doubleValue();
+
+                row[i] = value;
+            }
+
+            mRows.add(row);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        mClosed = true;
+        mRows.clear();
+    }
+
+    private Object get(int columnIndex)
+    {
+        if (mPosition < 0 || mPosition >= mRows.size())
+            throw new IllegalStateException("The cursor is not on a row: " + mPosition);
+
+        return mRows.get(mPosition)[columnIndex];
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex)
+    {
+        Object value = get(columnIndex);
+        return value == null ? null : value instanceof byte[] ? (byte[]) value : value.toString().getBytes();
+    }
+
+    @Override
+    public int getColumnCount()
+    {
+        return mColumnNames.length;
+    }
+
+    @Override
+    public int getColumnIndex(String columnName)
+    {
+        for (int i = 0; i < mColumnNames.length; i++)
+            if (mColumnNames[i].equalsIgnoreCase(columnName))
+                return i;
+
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName)
+    {
+        int index = getColumnIndex(columnName);
+
+        if (index < 0)
+            throw new IllegalArgumentException("Column '" + columnName + "' does not exist");
+
+        return index;
+    }
+
+    @Override
+    public String getColumnName(int columnIndex)
+    {
+        return mColumnNames[columnIndex];
+    }
+
+    @Override
+    public String[] getColumnNames()
+    {
+        return mColumnNames;
+    }
+
+    @Override
+    public int getCount()
+    {
+        return mRows.size();
+    }
+
+    @Override
+    public double getDouble(int columnIndex)
+    {
+        Object value = get(columnIndex);
+
+        if (value instanceof Number)
+            return ((Number) value).doubleValue();
+
+        try {
+            return value == null ? 0 : Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public float getFloat(int columnIndex)
+    {
+        return (float) getDouble(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex)
+    {
+        return (int) getLong(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex)
+    {
+        Object value = get(columnIndex);
+        return value instanceof Number ? ((Number) value).longValue() : (long) getDouble(columnIndex);
+    }
+
+    @Override
+    public int getPosition()
+    {
+        return mPosition;
+    }
+
+    @Override
+    public short getShort(int columnIndex)
+    {
+        return (short) getLong(columnIndex);
+    }
+
+    @Override
+    public String getString(int columnIndex)
+    {
+        Object value = get(columnIndex);
+        return value == null ? null : value instanceof byte[] ? new String((byte[]) value) : value.toString();
+    }
+
+    @Override
+    public int getType(int columnIndex)
+    {
+        Object value = get(columnIndex);
+
+        if (value == null)
+            return FIELD_TYPE_NULL;
+        else if (value instanceof Long)
+            return FIELD_TYPE_INTEGER;
+        else if (value instanceof Double)
+            return FIELD_TYPE_FLOAT;
+        else if (value instanceof byte[])
+            return FIELD_TYPE_BLOB;
+
+        return FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public boolean isAfterLast()
+    {
+        return mPosition >= mRows.size();
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return mClosed;
+    }
+
+    @Override
+    public boolean isNull(int columnIndex)
+    {
+        return get(columnIndex) == null;
+    }
+
+    @Override
+    public boolean moveToFirst()
+    {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToNext()
+    {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean moveToPosition(int position)
+    {
+        mPosition = Math.max(-1, Math.min(position, mRows.size()));
+        return mPosition >= 0 && mPosition < mRows.size();
+    }
+}
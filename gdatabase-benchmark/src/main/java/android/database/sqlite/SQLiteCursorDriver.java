@@ -0,0 +1,8 @@
+package android.database.sqlite;
+
+/**
+ * Stand-in for the framework interface, only passed around as the stand-ins run the queries themselves.
+ */
+public interface SQLiteCursorDriver
+{
+}
@@ -0,0 +1,481 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stand-in for the framework class on top of a single JDBC connection to SQLite. As with the primary connection of
+ * the framework, a thread that holds a transaction keeps the database to itself until the transaction ends, nested
+ * transactions only commit with the outermost one and a nested transaction that fails makes the outermost one roll
+ * back.
+ */
+public final class SQLiteDatabase implements Closeable
+{
+    public static final String TAG = SQLiteDatabase.class.getSimpleName();
+
+    private final String mPath;
+    private final Connection mConnection;
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Deque<Transaction> mTransactions = new ArrayDeque<>();
+    private PreparedStatement mLastInsertRowIdStatement;
+
+    private SQLiteDatabase(String path, Connection connection)
+    {
+        mPath = path;
+        mConnection = connection;
+    }
+
+    /**
+     * @param path of the database file or null for an in-memory database
+     */
+    public static SQLiteDatabase openDatabase(String path)
+    {
+        try {
+            return new SQLiteDatabase(path, DriverManager.getConnection("jdbc:sqlite:"
+                    + (path == null ? ":memory:" : path)));
+        } catch (SQLException e) {
+            throw new SQLiteException("Could not open " + path, e);
+        }
+    }
+
+    public void beginTransaction()
+    {
+        beginTransactionWithListener(null);
+    }
+
+    public void beginTransactionWithListener(SQLiteTransactionListener listener)
+    {
+        boolean begun = false;
+
+        mLock.lock();
+
+        try {
+            if (mTransactions.isEmpty())
+                execute("BEGIN IMMEDIATE");
+
+            mTransactions.push(new Transaction(listener));
+            begun = true;
+
+            if (listener != null)
+                listener.onBegin();
+        } catch (RuntimeException e) {
+            if (begun) {
+                mTransactions.pop();
+
+                if (mTransactions.isEmpty())
+                    execute("ROLLBACK");
+            }
+
+            mLock.unlock();
+            throw e;
+        }
+    }
+
+    static void bind(PreparedStatement statement, int index, Object value) throws SQLException
+    {
+        if (value == null)
+            statement.setNull(index, java.sql.Types.NULL);
+        else if (value instanceof byte[])
+            statement.setBytes(index, (byte[]) value);
+        else if (value instanceof Double || value instanceof Float)
+            statement.setDouble(index, ((Number) value).doubleValue());
+        else if (value instanceof Number)
+            statement.setLong(index, ((Number) value).longValue());
+        else if (value instanceof Boolean)
+            statement.setLong(index, (Boolean) value ? 1 : 0);
+        else
+            statement.setString(index, value.toString());
+    }
+
+    private static String buildQuery(String table, String[] columns, String where, String groupBy, String having,
+                                      String orderBy, String limit)
+    {
+        StringBuilder sql = new StringBuilder("SELECT ");
+
+        if (columns == null || columns.length == 0)
+            sql.append("*");
+        else
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0)
+                    sql.append(", ");
+
+                sql.append(columns[i]);
+            }
+
+        sql.append(" FROM ").append(table);
+        appendClause(sql, " WHERE ", where);
+        appendClause(sql, " GROUP BY ", groupBy);
+        appendClause(sql, " HAVING ", having);
+        appendClause(sql, " ORDER BY ", orderBy);
+        appendClause(sql, " LIMIT ", limit);
+
+        return sql.toString();
+    }
+
+    private static void appendClause(StringBuilder sql, String name, String clause)
+    {
+        if (clause != null && clause.length() > 0)
+            sql.append(name).append(clause);
+    }
+
+    @Override
+    public void close()
+    {
+        mLock.lock();
+
+        try {
+            mConnection.close();
+        } catch (SQLException e) {
+            Log.e(TAG, "Could not close " + mPath, e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public SQLiteStatement compileStatement(String sql)
+    {
+        return new SQLiteStatement(this, sql);
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs)
+    {
+        return executeUpdate("DELETE FROM " + table + (whereClause == null || whereClause.length() == 0 ? ""
+                : " WHERE " + whereClause), whereArgs);
+    }
+
+    public void endTransaction()
+    {
+        if (!mLock.isHeldByCurrentThread() || mTransactions.isEmpty())
+            throw new IllegalStateException("There is no transaction to end");
+
+        try {
+            Transaction transaction = mTransactions.pop();
+            boolean successful = transaction.markedSuccessful && !transaction.childFailed;
+
+            if (transaction.listener != null) {
+                try {
+                    if (successful)
+                        transaction.listener.onCommit();
+                    else
+                        transaction.listener.onRollback();
+                } catch (RuntimeException e) {
+                    successful = false;
+                    Log.e(TAG, "Transaction listener failed", e);
+                }
+            }
+
+            Transaction parent = mTransactions.peek();
+
+            if (parent != null) {
+                if (!successful)
+                    parent.childFailed = true;
+            } else
+                execute(successful ? "COMMIT" : "ROLLBACK");
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void execute(String sql)
+    {
+        try {
+            Statement statement = mConnection.createStatement();
+
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public void execSQL(String sql)
+    {
+        execSQL(sql, null);
+    }
+
+    public void execSQL(String sql, Object[] bindArgs)
+    {
+        mLock.lock();
+
+        try {
+            PreparedStatement statement = prepare(sql);
+
+            try {
+                if (bindArgs != null)
+                    for (int i = 0; i < bindArgs.length; i++)
+                        bind(statement, i + 1, bindArgs[i]);
+
+                statement.execute();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private int executeUpdate(String sql, Object[] bindArgs)
+    {
+        mLock.lock();
+
+        try {
+            PreparedStatement statement = prepare(sql);
+
+            try {
+                if (bindArgs != null)
+                    for (int i = 0; i < bindArgs.length; i++)
+                        bind(statement, i + 1, bindArgs[i]);
+
+                return statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    ReentrantLock getLock()
+    {
+        return mLock;
+    }
+
+    public String getPath()
+    {
+        return mPath;
+    }
+
+    public int getVersion()
+    {
+        Cursor cursor = rawQuery("PRAGMA user_version", null);
+
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public boolean inTransaction()
+    {
+        return mLock.isHeldByCurrentThread() && !mTransactions.isEmpty();
+    }
+
+    public long insert(String table, String nullColumnHack, ContentValues values)
+    {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table);
+        Object[] bindArgs;
+
+        if (values == null || values.size() == 0) {
+            sql.append(" (").append(nullColumnHack).append(") VALUES (NULL)");
+            bindArgs = null;
+        } else {
+            StringBuilder placeholders = new StringBuilder();
+            int i = 0;
+
+            bindArgs = new Object[values.size()];
+            sql.append(" (");
+
+            for (Map.Entry<String, Object> entry : values.valueSet()) {
+                if (i > 0) {
+                    sql.append(", ");
+                    placeholders.append(", ");
+                }
+
+                sql.append(entry.getKey());
+                placeholders.append("?");
+                bindArgs[i++] = entry.getValue();
+            }
+
+            sql.append(") VALUES (").append(placeholders).append(")");
+        }
+
+        mLock.lock();
+
+        try {
+            return executeUpdate(sql.toString(), bindArgs) > 0 ? lastInsertRowId() : -1;
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Error inserting " + values, e);
+            return -1;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public boolean isOpen()
+    {
+        try {
+            return !mConnection.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    public boolean isReadOnly()
+    {
+        return false;
+    }
+
+    long lastInsertRowId() throws SQLiteException
+    {
+        try {
+            if (mLastInsertRowIdStatement == null)
+                mLastInsertRowIdStatement = mConnection.prepareStatement("SELECT last_insert_rowid()");
+
+            ResultSet resultSet = mLastInsertRowIdStatement.executeQuery();
+
+            try {
+                return resultSet.next() ? resultSet.getLong(1) : -1;
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException
+    {
+        return mConnection.prepareStatement(sql);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy,
+                        String having, String orderBy)
+    {
+        return query(table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy,
+                        String having, String orderBy, String limit)
+    {
+        return rawQuery(buildQuery(table, columns, selection, groupBy, having, orderBy, limit), selectionArgs);
+    }
+
+    /**
+     * Runs the query through the factory, which is handed the query with every argument bound as a string. The
+     * cursor driver is not needed by the stand-ins, so it is always null.
+     */
+    public Cursor queryWithFactory(CursorFactory cursorFactory, boolean distinct, String table, String[] columns,
+                                   String selection, String[] selectionArgs, String groupBy, String having,
+                                   String orderBy, String limit)
+    {
+        String sql = buildQuery(table, columns, selection, groupBy, having, orderBy, limit);
+        SQLiteQuery query = new SQLiteQuery(this, distinct ? "SELECT DISTINCT " + sql.substring(7) : sql);
+        query.bindAllArgsAsStrings(selectionArgs);
+
+        return cursorFactory == null ? new SQLiteCursor(null, table, query)
+                : cursorFactory.newCursor(this, null, table, query);
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs)
+    {
+        return executeQuery(sql, selectionArgs);
+    }
+
+    SQLiteCursor executeQuery(String sql, Object[] bindArgs)
+    {
+        mLock.lock();
+
+        try {
+            PreparedStatement statement = prepare(sql);
+
+            try {
+                if (bindArgs != null)
+                    for (int i = 0; i < bindArgs.length; i++)
+                        bind(statement, i + 1, bindArgs[i]);
+
+                ResultSet resultSet = statement.executeQuery();
+
+                try {
+                    return new SQLiteCursor(resultSet);
+                } finally {
+                    resultSet.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + "; sql: " + sql, e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public void setTransactionSuccessful()
+    {
+        if (!inTransaction())
+            throw new IllegalStateException("There is no transaction to mark");
+
+        Transaction transaction = mTransactions.peek();
+
+        if (transaction.markedSuccessful)
+            throw new IllegalStateException("The transaction is already marked as successful");
+
+        transaction.markedSuccessful = true;
+    }
+
+    public void setVersion(int version)
+    {
+        execSQL("PRAGMA user_version = " + version);
+    }
+
+    public int update(String table, ContentValues values, String whereClause, String[] whereArgs)
+    {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        int argCount = whereArgs == null ? 0 : whereArgs.length;
+        Object[] bindArgs = new Object[values.size() + argCount];
+        int i = 0;
+
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            if (i > 0)
+                sql.append(", ");
+
+            sql.append(entry.getKey()).append(" = ?");
+            bindArgs[i++] = entry.getValue();
+        }
+
+        for (int j = 0; j < argCount; j++)
+            bindArgs[i++] = whereArgs[j];
+
+        appendClause(sql, " WHERE ", whereClause);
+
+        return executeUpdate(sql.toString(), bindArgs);
+    }
+
+    public interface CursorFactory
+    {
+        Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query);
+    }
+
+    private static class Transaction
+    {
+        final SQLiteTransactionListener listener;
+        boolean markedSuccessful;
+        boolean childFailed;
+
+        Transaction(SQLiteTransactionListener listener)
+        {
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package android.database.sqlite;
+
+import android.database.SQLException;
+
+/**
+ * Stand-in for the framework class.
+ */
+public class SQLiteException extends SQLException
+{
+    public SQLiteException()
+    {
+    }
+
+    public SQLiteException(String error)
+    {
+        super(error);
+    }
+
+    public SQLiteException(String error, Throwable cause)
+    {
+        super(error, cause);
+    }
+}
@@ -0,0 +1,104 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * Stand-in for the framework class that opens the database through {@link SQLiteDatabase#openDatabase(String)} and
+ * runs the same callbacks in the same order. A null name opens an in-memory database.
+ */
+public abstract class SQLiteOpenHelper implements AutoCloseable
+{
+    private final String mName;
+    private final int mVersion;
+    private SQLiteDatabase mDatabase;
+
+    public SQLiteOpenHelper(Context context, String name, SQLiteDatabase.CursorFactory factory, int version)
+    {
+        if (version < 1)
+            throw new IllegalArgumentException("Version must be >= 1, was " + version);
+
+        mName = name;
+        mVersion = version;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (mDatabase != null && mDatabase.isOpen())
+            mDatabase.close();
+
+        mDatabase = null;
+    }
+
+    public String getDatabaseName()
+    {
+        return mName;
+    }
+
+    public SQLiteDatabase getReadableDatabase()
+    {
+        return getWritableDatabase();
+    }
+
+    public synchronized SQLiteDatabase getWritableDatabase()
+    {
+        if (mDatabase != null && mDatabase.isOpen())
+            return mDatabase;
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(mName);
+
+        try {
+            onConfigure(db);
+
+            int version = db.getVersion();
+
+            if (version != mVersion) {
+                db.beginTransaction();
+
+                try {
+                    if (version == 0)
+                        onCreate(db);
+                    else if (version > mVersion)
+                        onDowngrade(db, version, mVersion);
+                    else
+                        onUpgrade(db, version, mVersion);
+
+                    db.setVersion(mVersion);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            onOpen(db);
+        } catch (RuntimeException e) {
+            db.close();
+            throw e;
+        }
+
+        mDatabase = db;
+        return db;
+    }
+
+    public void onConfigure(SQLiteDatabase db)
+    {
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion)
+    {
+        throw new SQLiteException("Can't downgrade database from version " + oldVersion + " to " + newVersion);
+    }
+
+    public void onOpen(SQLiteDatabase db)
+    {
+    }
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public void setWriteAheadLoggingEnabled(boolean enabled)
+    {
+        // There is a single connection, so there is nothing to read in parallel.
+    }
+}
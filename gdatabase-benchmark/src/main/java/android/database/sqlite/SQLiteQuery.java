@@ -0,0 +1,62 @@
+package android.database.sqlite;
+
+/**
+ * Stand-in for the framework class that keeps the arguments of a query until a {@link SQLiteCursor} runs it.
+ */
+public final class SQLiteQuery
+{
+    private final SQLiteDatabase mDatabase;
+    private final String mSql;
+    private Object[] mBindArgs = new Object[0];
+
+    SQLiteQuery(SQLiteDatabase database, String sql)
+    {
+        mDatabase = database;
+        mSql = sql;
+    }
+
+    public void bindAllArgsAsStrings(String[] bindArgs)
+    {
+        if (bindArgs != null)
+            for (int i = bindArgs.length; i != 0; i--)
+                bind(i, bindArgs[i - 1]);
+    }
+
+    private void bind(int index, Object value)
+    {
+        if (index > mBindArgs.length)
+            mBindArgs = java.util.Arrays.copyOf(mBindArgs, index);
+
+        mBindArgs[index - 1] = value;
+    }
+
+    public void bindBlob(int index, byte[] value)
+    {
+        bind(index, value);
+    }
+
+    public void bindDouble(int index, double value)
+    {
+        bind(index, value);
+    }
+
+    public void bindLong(int index, long value)
+    {
+        bind(index, value);
+    }
+
+    public void bindNull(int index)
+    {
+        bind(index, null);
+    }
+
+    public void bindString(int index, String value)
+    {
+        bind(index, value);
+    }
+
+    SQLiteCursor execute()
+    {
+        return mDatabase.executeQuery(mSql, mBindArgs);
+    }
+}
@@ -0,0 +1,148 @@
+package android.database.sqlite;
+
+import java.io.Closeable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Stand-in for the framework class on top of a prepared JDBC statement. The bindings are kept between executions
+ * until {@link #clearBindings()} is called, as in the framework.
+ */
+public final class SQLiteStatement implements Closeable
+{
+    private final SQLiteDatabase mDatabase;
+    private final String mSql;
+    private final PreparedStatement mStatement;
+
+    SQLiteStatement(SQLiteDatabase database, String sql)
+    {
+        mDatabase = database;
+        mSql = sql;
+
+        database.getLock().lock();
+
+        try {
+            mStatement = database.prepare(sql);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + "; sql: " + sql, e);
+        } finally {
+            database.getLock().unlock();
+        }
+    }
+
+    private void bind(int index, Object value)
+    {
+        try {
+            SQLiteDatabase.bind(mStatement, index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public void bindBlob(int index, byte[] value)
+    {
+        bind(index, value);
+    }
+
+    public void bindDouble(int index, double value)
+    {
+        bind(index, value);
+    }
+
+    public void bindLong(int index, long value)
+    {
+        bind(index, value);
+    }
+
+    public void bindNull(int index)
+    {
+        bind(index, null);
+    }
+
+    public void bindString(int index, String value)
+    {
+        bind(index, value);
+    }
+
+    public void clearBindings()
+    {
+        try {
+            mStatement.clearParameters();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        try {
+            mStatement.close();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public void execute()
+    {
+        executeUpdateDelete();
+    }
+
+    /**
+     * @return the row id of the inserted row, or -1 if no row was written
+     */
+    public long executeInsert()
+    {
+        mDatabase.getLock().lock();
+
+        try {
+            return mStatement.executeUpdate() > 0 ? mDatabase.lastInsertRowId() : -1;
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + "; sql: " + mSql, e);
+        } finally {
+            mDatabase.getLock().unlock();
+        }
+    }
+
+    public int executeUpdateDelete()
+    {
+        mDatabase.getLock().lock();
+
+        try {
+            return mStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + "; sql: " + mSql, e);
+        } finally {
+            mDatabase.getLock().unlock();
+        }
+    }
+
+    public long simpleQueryForLong()
+    {
+        mDatabase.getLock().lock();
+
+        try {
+            ResultSet resultSet = mStatement.executeQuery();
+
+            try {
+                if (!resultSet.next())
+                    throw new SQLiteException("The query returned no rows; sql: " + mSql);
+
+                return resultSet.getLong(1);
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + "; sql: " + mSql, e);
+        } finally {
+            mDatabase.getLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SQLiteStatement: " + mSql;
+    }
+}
@@ -0,0 +1,13 @@
+package android.database.sqlite;
+
+/**
+ * Stand-in for the framework interface.
+ */
+public interface SQLiteTransactionListener
+{
+    void onBegin();
+
+    void onCommit();
+
+    void onRollback();
+}
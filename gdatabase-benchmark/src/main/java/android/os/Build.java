@@ -0,0 +1,29 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class that reports Android 11, whose SQLite release supports every feature the library
+ * uses.
+ */
+public class Build
+{
+    public static class VERSION
+    {
+        public static final int SDK_INT = VERSION_CODES.R;
+    }
+
+    public static class VERSION_CODES
+    {
+        public static final int HONEYCOMB = 11;
+        public static final int ICE_CREAM_SANDWICH = 14;
+        public static final int JELLY_BEAN = 16;
+        public static final int JELLY_BEAN_MR1 = 17;
+        public static final int KITKAT = 19;
+        public static final int LOLLIPOP = 21;
+        public static final int M = 23;
+        public static final int N = 24;
+        public static final int O = 26;
+        public static final int P = 28;
+        public static final int Q = 29;
+        public static final int R = 30;
+    }
+}
@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class which runs the posted tasks right away on the posting thread.
+ */
+public class Handler
+{
+    public Handler(Looper looper)
+    {
+    }
+
+    public final boolean post(Runnable runnable)
+    {
+        runnable.run();
+        return true;
+    }
+}
@@ -0,0 +1,14 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class. There is no message loop on the JVM, see {@link Handler}.
+ */
+public final class Looper
+{
+    private static final Looper MAIN_LOOPER = new Looper();
+
+    public static Looper getMainLooper()
+    {
+        return MAIN_LOOPER;
+    }
+}
@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class.
+ */
+public final class SystemClock
+{
+    public static long elapsedRealtime()
+    {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long uptimeMillis()
+    {
+        return System.nanoTime() / 1000000;
+    }
+}
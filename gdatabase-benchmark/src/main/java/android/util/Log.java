@@ -0,0 +1,59 @@
+package android.util;
+
+/**
+ * Stand-in for the framework class. Warnings and errors are only written to the standard error when the
+ * {@code gdatabase.log} system property is set to true, since printing them would dominate the measurements of the
+ * operations that log on their normal path. The rest is dropped.
+ */
+public final class Log
+{
+    private static final boolean ENABLED = Boolean.getBoolean("gdatabase.log");
+
+    public static int d(String tag, String msg)
+    {
+        return 0;
+    }
+
+    public static int e(String tag, String msg)
+    {
+        return println("E", tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr)
+    {
+        return println("E", tag, msg, tr);
+    }
+
+    public static int i(String tag, String msg)
+    {
+        return 0;
+    }
+
+    public static int v(String tag, String msg)
+    {
+        return 0;
+    }
+
+    public static int w(String tag, String msg)
+    {
+        return println("W", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr)
+    {
+        return println("W", tag, msg, tr);
+    }
+
+    private static int println(String priority, String tag, String msg, Throwable tr)
+    {
+        if (!ENABLED)
+            return 0;
+
+        System.err.println(priority + "/" + tag + ": " + msg);
+
+        if (tr != null)
+            tr.printStackTrace();
+
+        return 0;
+    }
+}
@@ -0,0 +1,129 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Writes each of the boxed types {@link ContentValues} can hold through the statement cache and reads them back with
+ * the storage class SQLite gave them.
+ */
+public class BindContentValueTest
+{
+    private static final String TABLE_NAME = "value";
+
+    private KuickDb mKuick;
+
+    @Before
+    public void setUp()
+    {
+        mKuick = new KuickDb(new Context(), null, null, 1)
+        {
+            @Override
+            public void onCreate(SQLiteDatabase db)
+            {
+                db.execSQL("CREATE TABLE `" + TABLE_NAME + "` (`id` INTEGER PRIMARY KEY, `data`)");
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+            {
+            }
+        };
+    }
+
+    @After
+    public void tearDown()
+    {
+        mKuick.close();
+    }
+
+    private void assertStored(Object value, String type, String text)
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        if (value instanceof Boolean)
+            values.put("data", (Boolean) value);
+        else if (value instanceof Byte)
+            values.put("data", (Byte) value);
+        else if (value instanceof Short)
+            values.put("data", (Short) value);
+        else if (value instanceof Integer)
+            values.put("data", (Integer) value);
+        else if (value instanceof Long)
+            values.put("data", (Long) value);
+        else if (value instanceof Float)
+            values.put("data", (Float) value);
+        else if (value instanceof Double)
+            values.put("data", (Double) value);
+        else
+            values.put("data", (String) value);
+
+        long id = mKuick.insert(db, TABLE_NAME, null, values);
+        Cursor cursor = db.rawQuery("SELECT typeof(`data`), `data` FROM `" + TABLE_NAME + "` WHERE `id` = ?",
+                new String[]{String.valueOf(id)});
+
+        try {
+            cursor.moveToFirst();
+            assertEquals(value.getClass().getSimpleName(), type, cursor.getString(0));
+            assertEquals(value.getClass().getSimpleName(), text, cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void bindsBooleanAsInteger()
+    {
+        assertStored(true, "integer", "1");
+        assertStored(false, "integer", "0");
+    }
+
+    @Test
+    public void bindsIntegralTypesAsInteger()
+    {
+        assertStored((byte) 3, "integer", "3");
+        assertStored((short) 7, "integer", "7");
+        assertStored(11, "integer", "11");
+        assertStored(13L, "integer", "13");
+    }
+
+    @Test
+    public void bindsFloatingPointTypesAsReal()
+    {
+        assertStored(1.5f, "real", "1.5");
+        assertStored(2.25d, "real", "2.25");
+    }
+
+    @Test
+    public void bindsStringAsText()
+    {
+        assertStored("1", "text", "1");
+    }
+
+    @Test
+    public void matchesBooleanByInteger()
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        values.put("data", true);
+        mKuick.insert(db, TABLE_NAME, null, values);
+
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM `" + TABLE_NAME + "` WHERE `data` = 1", null);
+
+        try {
+            cursor.moveToFirst();
+            assertEquals(1, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+}
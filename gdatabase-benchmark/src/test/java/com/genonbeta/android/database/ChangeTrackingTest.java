@@ -0,0 +1,131 @@
+package com.genonbeta.android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks when the changes made in transactions reach the {@link ChangeNotifier} listeners.
+ */
+public class ChangeTrackingTest
+{
+    private final List<KuickDb.BroadcastData> mChanges = new ArrayList<>();
+    private NoteKuickDb mKuick;
+
+    @Before
+    public void setUp()
+    {
+        mKuick = new NoteKuickDb(NoteKuickDb.createSchema());
+        mKuick.getChangeNotifier().subscribe(new ChangeNotifier.Listener()
+        {
+            @Override
+            public void onDatabaseChange(KuickDb kuick, KuickDb.BroadcastData data)
+            {
+                mChanges.add(data);
+            }
+        }, Note.TABLE_NAME);
+    }
+
+    @After
+    public void tearDown()
+    {
+        mKuick.close();
+    }
+
+    private int broadcast()
+    {
+        mKuick.broadcast();
+
+        int count = mChanges.size();
+        mChanges.clear();
+        return count;
+    }
+
+    @Test
+    public void publishesACommitOnceTheTransactionEnds()
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+        mKuick.beginTransaction(db);
+
+        try {
+            mKuick.insert(db, new Note(1, "one"), null, null);
+            db.setTransactionSuccessful();
+            assertEquals(0, broadcast());
+        } finally {
+            mKuick.endTransaction(db);
+        }
+
+        assertEquals(1, broadcast());
+    }
+
+    @Test
+    public void dropsTheChangesOfARollback()
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+        mKuick.beginTransaction(db);
+
+        try {
+            mKuick.insert(db, new Note(1, "one"), null, null);
+        } finally {
+            mKuick.endTransaction(db);
+        }
+
+        assertEquals(0, broadcast());
+        assertEquals(0, mKuick.count());
+    }
+
+    @Test
+    public void dropsTheChangesOfANestedRollback()
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+        mKuick.beginTransaction(db);
+
+        try {
+            mKuick.insert(db, new Note(1, "one"), null, null);
+            mKuick.beginTransaction(db);
+
+            try {
+                mKuick.insert(db, new Note(2, "two"), null, null);
+            } finally {
+                mKuick.endTransaction(db);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            mKuick.endTransaction(db);
+        }
+
+        assertEquals(0, broadcast());
+        assertEquals(0, mKuick.count());
+    }
+
+    @Test
+    public void holdsTheChangesOfATransactionStartedOnTheDatabase()
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+        long version = mKuick.getTableVersion(Note.TABLE_NAME);
+        db.beginTransaction();
+
+        try {
+            mKuick.insert(db, new Note(1, "one"), null, null);
+            // A bulk insert tracks a transaction of its own, nested in the one of the caller.
+            mKuick.insert(db, Arrays.asList(new Note(2, "two"), new Note(3, "three")), null, null);
+            db.setTransactionSuccessful();
+
+            assertEquals(0, broadcast());
+            assertEquals(version, mKuick.getTableVersion(Note.TABLE_NAME));
+        } finally {
+            db.endTransaction();
+        }
+
+        assertEquals(1, broadcast());
+        assertEquals(3, mKuick.count());
+    }
+}
@@ -0,0 +1,79 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A row of {@link NoteKuickDb} that counts the hooks called on it. A note whose id is zero has not been inserted yet
+ * and leaves its id to the database.
+ */
+public class Note implements DatabaseObject<Void>
+{
+    public static final String TABLE_NAME = "note",
+            FIELD_ID = "id",
+            FIELD_TITLE = "title",
+            FIELD_SCORE = "score";
+
+    public long id;
+    public String title;
+    public double score;
+    public int createCount;
+    public int updateCount;
+    public int removeCount;
+
+    public Note()
+    {
+    }
+
+    public Note(long id, String title)
+    {
+        this.id = id;
+        this.title = title;
+    }
+
+    @Override
+    public ContentValues getValues()
+    {
+        ContentValues values = new ContentValues();
+
+        if (id != 0)
+            values.put(FIELD_ID, id);
+
+        values.put(FIELD_TITLE, title);
+        values.put(FIELD_SCORE, score);
+
+        return values;
+    }
+
+    @Override
+    public SQLQuery.Select getWhere()
+    {
+        return new SQLQuery.Select(TABLE_NAME).setWhere(FIELD_ID + "=?", String.valueOf(id));
+    }
+
+    @Override
+    public void reconstruct(SQLiteDatabase db, KuickDb kuick, ContentValues item)
+    {
+        id = item.getAsLong(FIELD_ID);
+        title = item.getAsString(FIELD_TITLE);
+        score = item.getAsDouble(FIELD_SCORE);
+    }
+
+    @Override
+    public void onCreateObject(SQLiteDatabase db, KuickDb kuick, Void parent, Progress.Listener listener)
+    {
+        createCount++;
+    }
+
+    @Override
+    public void onUpdateObject(SQLiteDatabase db, KuickDb kuick, Void parent, Progress.Listener listener)
+    {
+        updateCount++;
+    }
+
+    @Override
+    public void onRemoveObject(SQLiteDatabase db, KuickDb kuick, Void parent, Progress.Listener listener)
+    {
+        removeCount++;
+    }
+}
@@ -0,0 +1,56 @@
+package com.genonbeta.android.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * An in-memory database with the table of {@link Note}s, which is created from the schema when it is opened.
+ */
+public class NoteKuickDb extends KuickDb
+{
+    public NoteKuickDb(SQLValues schema)
+    {
+        super(new Context(), null, null, 1);
+        setSchema(schema);
+    }
+
+    public static SQLValues createSchema()
+    {
+        SQLValues values = new SQLValues();
+
+        values.defineTable(Note.TABLE_NAME)
+                .define(new SQLValues.Column(Note.FIELD_ID, SQLType.INTEGER, false, "primary key"))
+                .define(new SQLValues.Column(Note.FIELD_TITLE, SQLType.TEXT, false))
+                .define(new SQLValues.Column(Note.FIELD_SCORE, SQLType.DOUBLE, false));
+
+        return values;
+    }
+
+    public int count()
+    {
+        return getTable(getReadableDatabase(), new SQLQuery.Select(Note.TABLE_NAME)).size();
+    }
+
+    public String getTitle(long id)
+    {
+        Note note = new Note(id, null);
+
+        try {
+            reconstruct(getReadableDatabase(), note);
+        } catch (Exception e) {
+            return null;
+        }
+
+        return note.title;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db)
+    {
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+    {
+    }
+}
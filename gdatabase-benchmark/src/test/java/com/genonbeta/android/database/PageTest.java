@@ -0,0 +1,107 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that keyset paging neither skips nor repeats rows whose seek values only differ beyond the precision of
+ * their text form, or whose seek column holds both integers and reals.
+ */
+public class PageTest
+{
+    private static final String TABLE_MIXED = "mixed",
+            FIELD_VALUE = "value";
+
+    private NoteKuickDb mKuick;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp()
+    {
+        mKuick = new NoteKuickDb(NoteKuickDb.createSchema());
+        mDb = mKuick.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown()
+    {
+        mKuick.close();
+    }
+
+    @Test
+    public void pagesThroughRealsOneUlpApart()
+    {
+        double score = 1.0;
+
+        for (int i = 1; i <= 6; i++) {
+            Note note = new Note(i, "note " + i);
+            note.score = score;
+            mKuick.insert(mDb, note, null, null);
+            score = Math.nextUp(score);
+        }
+
+        List<Long> ids = readAllPages(new SQLQuery.Select(Note.TABLE_NAME).setSeek(Note.FIELD_SCORE), 1);
+        assertEquals(readIds(new SQLQuery.Select(Note.TABLE_NAME).setOrderBy(Note.FIELD_SCORE)), ids);
+        assertEquals(6, ids.size());
+    }
+
+    @Test
+    public void pagesThroughIntegersAndRealsInOneColumn()
+    {
+        mDb.execSQL("CREATE TABLE " + TABLE_MIXED + " (" + Note.FIELD_ID + " INTEGER PRIMARY KEY, " + FIELD_VALUE
+                + ")");
+
+        Object[] values = {9007199254740994L, 2.5, 1L, 9007199254740992.0, 2L, 1.5, 9007199254740993L, 2.0,
+                9007199254740993L};
+
+        for (Object value : values) {
+            ContentValues row = new ContentValues();
+
+            if (value instanceof Long)
+                row.put(FIELD_VALUE, (Long) value);
+            else
+                row.put(FIELD_VALUE, (Double) value);
+
+            mDb.insert(TABLE_MIXED, null, row);
+        }
+
+        List<Long> ids = readAllPages(new SQLQuery.Select(TABLE_MIXED).setSeek(FIELD_VALUE, Note.FIELD_ID), 2);
+        assertEquals(readIds(new SQLQuery.Select(TABLE_MIXED).setOrderBy(FIELD_VALUE + ", " + Note.FIELD_ID)), ids);
+        assertEquals(values.length, ids.size());
+    }
+
+    private List<Long> readAllPages(SQLQuery.Select select, int size)
+    {
+        List<Long> ids = new ArrayList<>();
+        String token = null;
+
+        do {
+            Page<ContentValues> page = mKuick.getPage(mDb, select, size, token);
+
+            for (ContentValues item : page.getItems())
+                ids.add(item.getAsLong(Note.FIELD_ID));
+
+            token = page.getNextToken();
+        } while (token != null && ids.size() <= 100);
+
+        return ids;
+    }
+
+    private List<Long> readIds(SQLQuery.Select select)
+    {
+        List<Long> ids = new ArrayList<>();
+
+        for (ContentValues item : mKuick.getTable(mDb, select))
+            ids.add(item.getAsLong(Note.FIELD_ID));
+
+        return ids;
+    }
+}
@@ -0,0 +1,66 @@
+package com.genonbeta.android.database;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that publishing calls the hook matching whether the row was inserted or updated, with and without the
+ * upsert statement.
+ */
+public class PublishTest
+{
+    private NoteKuickDb mKuick;
+
+    @After
+    public void tearDown()
+    {
+        mKuick.close();
+    }
+
+    @Test
+    public void upsertCallsTheCreateHookForANewRow()
+    {
+        mKuick = new NoteKuickDb(createUpsertSchema());
+        Note note = new Note(1, "one");
+
+        assertEquals(1, mKuick.publish(note));
+        assertEquals(1, note.createCount);
+        assertEquals(0, note.updateCount);
+        assertEquals("one", mKuick.getTitle(1));
+    }
+
+    @Test
+    public void upsertCallsTheUpdateHookForAnExistingRow()
+    {
+        mKuick = new NoteKuickDb(createUpsertSchema());
+        mKuick.publish(new Note(1, "one"));
+
+        Note note = new Note(1, "changed");
+
+        assertEquals(1, mKuick.publish(note));
+        assertEquals(0, note.createCount);
+        assertEquals(1, note.updateCount);
+        assertEquals("changed", mKuick.getTitle(1));
+        assertEquals(1, mKuick.count());
+    }
+
+    @Test
+    public void fallbackCountsTheInsertedRow()
+    {
+        mKuick = new NoteKuickDb(NoteKuickDb.createSchema());
+        Note note = new Note(1, "one");
+
+        assertEquals(1, mKuick.publish(note));
+        assertEquals(1, note.createCount);
+        assertEquals("one", mKuick.getTitle(1));
+    }
+
+    private static SQLValues createUpsertSchema()
+    {
+        SQLValues schema = NoteKuickDb.createSchema();
+        schema.getTable(Note.TABLE_NAME).setConflictKeys(Note.FIELD_ID);
+        return schema;
+    }
+}
@@ -0,0 +1,127 @@
+package com.genonbeta.android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.genonbeta.android.database.exception.ReconstructionFailedException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks that the query and object caches never serve rows that a transaction changed once it has ended.
+ */
+public class QueryCacheTest
+{
+    private static final SQLQuery.Select SELECT_NOTES = new SQLQuery.Select(Note.TABLE_NAME);
+
+    private NoteKuickDb mKuick;
+
+    @Before
+    public void setUp()
+    {
+        mKuick = new NoteKuickDb(NoteKuickDb.createSchema());
+        mKuick.setQueryCacheCapacity(16, 1024 * 1024);
+        mKuick.setObjectCacheCapacity(16);
+    }
+
+    @After
+    public void tearDown()
+    {
+        mKuick.close();
+    }
+
+    @Test
+    public void servesTheCommittedRowsOnceTheTransactionEnds()
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+        assertEquals(0, mKuick.getTable(db, SELECT_NOTES).size());
+
+        mKuick.beginTransaction(db);
+
+        try {
+            mKuick.insert(db, new Note(1, "one"), null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            mKuick.endTransaction(db);
+        }
+
+        assertEquals(1, mKuick.getTable(db, SELECT_NOTES).size());
+    }
+
+    @Test
+    public void doesNotKeepTheRowsReadInARolledBackTransaction()
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+        long version = mKuick.getTableVersion(Note.TABLE_NAME);
+
+        mKuick.beginTransaction(db);
+
+        try {
+            mKuick.insert(db, new Note(1, "one"), null, null);
+            assertEquals(1, mKuick.getTable(db, SELECT_NOTES).size());
+        } finally {
+            mKuick.endTransaction(db);
+        }
+
+        assertNotEquals(version, mKuick.getTableVersion(Note.TABLE_NAME));
+        assertEquals(0, mKuick.getTable(db, SELECT_NOTES).size());
+    }
+
+    @Test
+    public void doesNotKeepTheObjectsReadInARolledBackTransaction() throws ReconstructionFailedException
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+        Note note = new Note(1, "committed");
+        mKuick.insert(db, note, null, null);
+
+        mKuick.beginTransaction(db);
+
+        try {
+            note.title = "rolled back";
+            mKuick.update(db, note, null, null);
+            mKuick.reconstruct(db, new Note(1, null));
+        } finally {
+            mKuick.endTransaction(db);
+        }
+
+        Note read = new Note(1, null);
+        mKuick.reconstruct(db, read);
+        assertEquals("committed", read.title);
+    }
+
+    @Test
+    public void keepsTheVersionUntilATransactionStartedOnTheDatabaseEnds() throws InterruptedException
+    {
+        final SQLiteDatabase db = mKuick.getWritableDatabase();
+        final long version = mKuick.getTableVersion(Note.TABLE_NAME);
+        final long[] versionInTransaction = new long[1];
+
+        assertEquals(0, mKuick.getTable(db, SELECT_NOTES).size());
+
+        // The writer never calls the instance again once its transaction is over.
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                db.beginTransaction();
+
+                try {
+                    mKuick.insert(db, new Note(1, "one"), null, null);
+                    versionInTransaction[0] = mKuick.getTableVersion(Note.TABLE_NAME);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        };
+
+        writer.start();
+        writer.join();
+
+        assertEquals(version, versionInTransaction[0]);
+        assertEquals(1, mKuick.getTable(db, SELECT_NOTES).size());
+    }
+}
@@ -0,0 +1,96 @@
+package com.genonbeta.android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that removing the objects of a query in chunks deletes every row and runs the hook of each object once.
+ */
+public class RemoveAsObjectTest
+{
+    private static final int ROW_COUNT = 2500;
+    private static final List<Long> REMOVED_IDS = new ArrayList<>();
+
+    private NoteKuickDb mKuick;
+
+    @Before
+    public void setUp()
+    {
+        mKuick = new NoteKuickDb(NoteKuickDb.createSchema());
+        REMOVED_IDS.clear();
+
+        List<Note> notes = new ArrayList<>();
+
+        for (int i = 1; i <= ROW_COUNT; i++)
+            notes.add(new Note(i, "note " + i));
+
+        mKuick.insert(notes);
+    }
+
+    @After
+    public void tearDown()
+    {
+        mKuick.close();
+    }
+
+    @Test
+    public void removesEveryRowAcrossChunks()
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+
+        assertTrue(mKuick.removeAsObject(db, new SQLQuery.Select(Note.TABLE_NAME), TrackedNote.class, null, null,
+                null));
+        assertEquals(0, mKuick.count());
+        assertEquals(ROW_COUNT, REMOVED_IDS.size());
+        assertEquals(ROW_COUNT, new HashSet<>(REMOVED_IDS).size());
+    }
+
+    @Test
+    public void stopsWhenTheObjectsDoNotMatchTheirRows()
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+
+        assertTrue(mKuick.removeAsObject(db, new SQLQuery.Select(Note.TABLE_NAME), OddOnlyNote.class, null, null,
+                null));
+        assertEquals(REMOVED_IDS.size(), new HashSet<>(REMOVED_IDS).size());
+
+        int oddCount = 0;
+
+        for (long id : REMOVED_IDS)
+            if (id % 2 != 0)
+                oddCount++;
+
+        assertEquals(ROW_COUNT - oddCount, mKuick.count());
+    }
+
+    public static class TrackedNote extends Note
+    {
+        @Override
+        public void onRemoveObject(SQLiteDatabase db, KuickDb kuick, Void parent, Progress.Listener listener)
+        {
+            super.onRemoveObject(db, kuick, parent, listener);
+            REMOVED_IDS.add(id);
+        }
+    }
+
+    /**
+     * Selects no row when its id is even, as an object whose where clause went stale would.
+     */
+    public static class OddOnlyNote extends TrackedNote
+    {
+        @Override
+        public SQLQuery.Select getWhere()
+        {
+            return new SQLQuery.Select(TABLE_NAME).setWhere(FIELD_ID + "=?", String.valueOf(id % 2 == 0 ? -id : id));
+        }
+    }
+}
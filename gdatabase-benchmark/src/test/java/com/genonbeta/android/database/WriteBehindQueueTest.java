@@ -0,0 +1,126 @@
+package com.genonbeta.android.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Queues writes of {@link Note}s and checks what reaches the database once they are flushed.
+ */
+public class WriteBehindQueueTest
+{
+    private NoteKuickDb mKuick;
+    private WriteBehindQueue mQueue;
+
+    @Before
+    public void setUp()
+    {
+        mKuick = new NoteKuickDb(NoteKuickDb.createSchema());
+        // The writes are only committed when the tests flush them.
+        mQueue = new WriteBehindQueue(mKuick, 100, 60000);
+    }
+
+    @After
+    public void tearDown()
+    {
+        mKuick.close();
+    }
+
+    private void flushFailing()
+    {
+        try {
+            mQueue.flush();
+            fail("The flush should have failed");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void coalescesWritesOfTheSameObject()
+    {
+        Note note = new Note(1, "first");
+        mQueue.insert(note);
+        note.title = "second";
+        mQueue.update(note);
+        note.title = "third";
+        mQueue.update(note);
+        mQueue.flush();
+
+        assertEquals(2, mQueue.getCoalescedCount());
+        assertEquals(1, mQueue.getWrittenCount());
+        assertEquals("third", mKuick.getTitle(1));
+    }
+
+    @Test
+    public void writesTheValuesTheObjectHadWhenQueued()
+    {
+        Note note = new Note(1, "queued");
+        mQueue.insert(note);
+        note.title = "changed later";
+        mQueue.flush();
+
+        assertEquals("queued", mKuick.getTitle(1));
+    }
+
+    @Test
+    public void doesNotMergeNewObjects()
+    {
+        mQueue.insert(new Note(0, "one"));
+        mQueue.insert(new Note(0, "two"));
+        mQueue.flush();
+
+        assertEquals(0, mQueue.getCoalescedCount());
+        assertEquals(2, mKuick.count());
+    }
+
+    @Test
+    public void retriesTheWritesOfAFailedFlushOneByOne()
+    {
+        mQueue.insert(new Note(1, "one"));
+        mQueue.insert(new Note(2, null));
+        mQueue.insert(new Note(3, "three"));
+        flushFailing();
+
+        assertEquals(2, mQueue.getWrittenCount());
+        assertEquals(1, mQueue.getPendingCount());
+        assertEquals(2, mKuick.count());
+    }
+
+    @Test
+    public void dropsAWriteThatKeepsFailing()
+    {
+        final List<DatabaseObject<?>> dropped = new ArrayList<>();
+        Note note = new Note(1, null);
+
+        mQueue.setMaxAttempts(2);
+        mQueue.setDeadLetterListener(new WriteBehindQueue.DeadLetterListener()
+        {
+            @Override
+            public void onWriteDropped(DatabaseObject<?> object, int operation, Exception error)
+            {
+                dropped.add(object);
+            }
+        });
+
+        mQueue.insert(note);
+        flushFailing();
+        assertEquals(1, mQueue.getPendingCount());
+
+        flushFailing();
+        assertEquals(0, mQueue.getPendingCount());
+        assertEquals(1, mQueue.getDroppedCount());
+        assertEquals(1, dropped.size());
+        assertSame(note, dropped.get(0));
+
+        mQueue.insert(new Note(2, "two"));
+        mQueue.flush();
+        assertEquals(1, mKuick.count());
+    }
+}
@@ -0,0 +1,153 @@
+package com.genonbeta.android.database.compiler;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * Generates an {@code ObjectFactory} for every class annotated with {@code GenerateFactory} so that the queries can
+ * create the objects they reconstruct without reflection.
+ */
+@SupportedAnnotationTypes(ObjectFactoryProcessor.ANNOTATION)
+public class ObjectFactoryProcessor extends AbstractProcessor
+{
+    public static final String ANNOTATION = "com.genonbeta.android.database.annotation.GenerateFactory";
+    public static final String DATABASE_OBJECT = "com.genonbeta.android.database.DatabaseObject";
+    public static final String OBJECT_FACTORY = "com.genonbeta.android.database.ObjectFactory";
+    public static final String GENERATED_SUFFIX = "_ObjectFactory";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        for (TypeElement annotation : annotations)
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation))
+                if (validate(element))
+                    generate((TypeElement) element);
+
+        return true;
+    }
+
+    private void error(Element element, String message)
+    {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void generate(TypeElement element)
+    {
+        String packageName = getPackageName(element);
+        String factoryName = getFlatName(element) + GENERATED_SUFFIX;
+        String typeName = element.getQualifiedName().toString();
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName.length() > 0
+                    ? packageName + "." + factoryName : factoryName, element);
+            Writer writer = file.openWriter();
+
+            try {
+                if (packageName.length() > 0)
+                    writer.write("package " + packageName + ";\n\n");
+
+                writer.write("public final class " + factoryName + " implements " + OBJECT_FACTORY + "<"
+                        + typeName + ">\n{\n");
+                writer.write("    public static final " + factoryName + " INSTANCE = new " + factoryName + "();\n\n");
+                writer.write("    @Override\n    public " + typeName + " create()\n    {\n");
+                writer.write("        return new " + typeName + "();\n    }\n}\n");
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(element, "Could not write " + factoryName + ": " + e.getMessage());
+        }
+    }
+
+    static String getFlatName(TypeElement element)
+    {
+        StringBuilder name = new StringBuilder(element.getSimpleName());
+        Element enclosing = element.getEnclosingElement();
+
+        while (enclosing instanceof TypeElement) {
+            name.insert(0, ((TypeElement) enclosing).getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+
+        return name.toString();
+    }
+
+    private String getPackageName(Element element)
+    {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    private boolean isVisible(Element element)
+    {
+        return !element.getModifiers().contains(Modifier.PRIVATE);
+    }
+
+    private boolean validate(Element element)
+    {
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "Only classes can generate object factories");
+            return false;
+        }
+
+        TypeElement typeElement = (TypeElement) element;
+
+        if (typeElement.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(element, "Abstract classes cannot generate object factories");
+            return false;
+        }
+
+        if (typeElement.getNestingKind() == NestingKind.MEMBER
+                && !typeElement.getModifiers().contains(Modifier.STATIC)) {
+            error(element, "Inner classes should be static to generate object factories");
+            return false;
+        }
+
+        for (Element enclosing = element; enclosing instanceof TypeElement;
+             enclosing = enclosing.getEnclosingElement())
+            if (!isVisible(enclosing)) {
+                error(element, "Private classes cannot generate object factories");
+                return false;
+            }
+
+        TypeElement databaseObject = processingEnv.getElementUtils().getTypeElement(DATABASE_OBJECT);
+
+        if (databaseObject != null) {
+            TypeMirror databaseObjectType = processingEnv.getTypeUtils().erasure(databaseObject.asType());
+
+            if (!processingEnv.getTypeUtils().isAssignable(typeElement.asType(), databaseObjectType)) {
+                error(element, "Object factories can only be generated for " + DATABASE_OBJECT);
+                return false;
+            }
+        }
+
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(typeElement.getEnclosedElements()))
+            if (constructor.getParameters().isEmpty() && isVisible(constructor))
+                return true;
+
+        error(element, "A no-argument constructor that is not private is needed to generate an object factory");
+        return false;
+    }
+}
@@ -0,0 +1,344 @@
+package com.genonbeta.android.database.compiler;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a {@code RowMapper} for every class annotated with {@code GenerateMapper} out of its fields annotated
+ * with {@code MapColumn}, including the ones it inherits.
+ */
+@SupportedAnnotationTypes({RowMapperProcessor.ANNOTATION, RowMapperProcessor.COLUMN_ANNOTATION})
+public class RowMapperProcessor extends AbstractProcessor
+{
+    public static final String ANNOTATION = "com.genonbeta.android.database.annotation.GenerateMapper";
+    public static final String COLUMN_ANNOTATION = "com.genonbeta.android.database.annotation.MapColumn";
+    public static final String ROW_MAPPER = "com.genonbeta.android.database.RowMapper";
+    public static final String ROW_MAPPERS = "com.genonbeta.android.database.RowMappers";
+    public static final String GENERATED_SUFFIX = "_RowMapper";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        // The columns are claimed too so that they are not reported as unprocessed, but they are read from the
+        // classes that generate mappers.
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+
+        if (annotation == null || !annotations.contains(annotation))
+            return true;
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "Only classes can generate row mappers");
+                continue;
+            }
+
+            List<MappedField> fields = collectFields((TypeElement) element);
+
+            if (fields != null)
+                generate((TypeElement) element, fields);
+        }
+
+        return true;
+    }
+
+    private List<MappedField> collectFields(TypeElement element)
+    {
+        List<MappedField> fields = new ArrayList<>();
+        Set<String> columns = new HashSet<>();
+        PackageElement targetPackage = processingEnv.getElementUtils().getPackageOf(element);
+        List<TypeElement> hierarchy = new ArrayList<>();
+        boolean valid = true;
+
+        for (TypeElement type = element; type != null; type = getSuperclass(type))
+            hierarchy.add(type);
+
+        // Superclass columns come first so that the order follows the declarations.
+        Collections.reverse(hierarchy);
+
+        for (TypeElement type : hierarchy)
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                String column = getColumnName(field);
+
+                if (column == null)
+                    continue;
+
+                Set<Modifier> modifiers = field.getModifiers();
+                boolean samePackage = processingEnv.getElementUtils().getPackageOf(field).equals(targetPackage);
+                String kind = getKind(field.asType());
+
+                if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)
+                        || modifiers.contains(Modifier.FINAL)) {
+                    error(field, "Mapped fields should not be private, static or final");
+                    valid = false;
+                } else if (!samePackage && !modifiers.contains(Modifier.PUBLIC)) {
+                    error(field, "Mapped fields inherited from another package should be public");
+                    valid = false;
+                } else if (kind == null) {
+                    error(field, "Unsupported type for a mapped field: " + field.asType());
+                    valid = false;
+                } else if (!columns.add(column)) {
+                    error(field, "Column " + column + " is mapped more than once");
+                    valid = false;
+                } else
+                    fields.add(new MappedField(field.getSimpleName().toString(), column, kind));
+            }
+
+        if (valid && fields.isEmpty()) {
+            error(element, "No fields are annotated with " + COLUMN_ANNOTATION);
+            valid = false;
+        }
+
+        return valid ? fields : null;
+    }
+
+    private void error(Element element, String message)
+    {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void generate(TypeElement element, List<MappedField> fields)
+    {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String mapperName = ObjectFactoryProcessor.getFlatName(element) + GENERATED_SUFFIX;
+        String typeName = element.getQualifiedName().toString();
+        StringBuilder code = new StringBuilder();
+
+        if (packageName.length() > 0)
+            code.append("package ").append(packageName).append(";\n\n");
+
+        code.append("public final class ").append(mapperName).append(" implements ").append(ROW_MAPPER)
+                .append("<").append(typeName).append(">\n{\n");
+        code.append("    public static final ").append(mapperName).append(" INSTANCE = new ").append(mapperName)
+                .append("();\n\n");
+        code.append("    private static final String[] COLUMNS = new String[]{");
+
+        for (int i = 0; i < fields.size(); i++)
+            code.append(i > 0 ? ", " : "").append('"').append(fields.get(i).column).append('"');
+
+        code.append("};\n\n");
+
+        code.append("    @Override\n    public int bind(android.database.sqlite.SQLiteStatement statement, int offset, ")
+                .append(typeName).append(" object)\n    {\n");
+
+        for (int i = 0; i < fields.size(); i++)
+            code.append("        ").append(fields.get(i).getBindCode("offset + " + i)).append("\n");
+
+        code.append("        return offset + ").append(fields.size()).append(";\n    }\n\n");
+
+        code.append("    @Override\n    public int[] getColumnIndexes(android.database.Cursor cursor)\n    {\n")
+                .append("        return ").append(ROW_MAPPERS).append(".getColumnIndexes(cursor, COLUMNS);\n")
+                .append("    }\n\n");
+
+        code.append("    @Override\n    public String[] getColumns()\n    {\n        return COLUMNS;\n    }\n\n");
+
+        code.append("    @Override\n    public void read(android.database.Cursor cursor, int[] columnIndexes, ")
+                .append(typeName).append(" object)\n    {\n");
+
+        for (int i = 0; i < fields.size(); i++)
+            code.append("        if (columnIndexes[").append(i).append("] >= 0)\n            ")
+                    .append(fields.get(i).getReadCode("columnIndexes[" + i + "]")).append("\n");
+
+        code.append("    }\n}\n");
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName.length() > 0
+                    ? packageName + "." + mapperName : mapperName, element);
+            Writer writer = file.openWriter();
+
+            try {
+                writer.write(code.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(element, "Could not write " + mapperName + ": " + e.getMessage());
+        }
+    }
+
+    private String getColumnName(VariableElement field)
+    {
+        for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+            if (!COLUMN_ANNOTATION.equals(((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                    .toString()))
+                continue;
+
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet())
+                if (entry.getKey().getSimpleName().contentEquals("value"))
+                    return String.valueOf(entry.getValue().getValue());
+        }
+
+        return null;
+    }
+
+    private String getKind(TypeMirror type)
+    {
+        switch (type.getKind()) {
+            case LONG:
+            case INT:
+            case SHORT:
+            case BYTE:
+            case DOUBLE:
+            case FLOAT:
+            case BOOLEAN:
+                return type.getKind().name().toLowerCase();
+            case ARRAY:
+                return "byte[]".equals(type.toString()) ? "byte[]" : null;
+            case DECLARED:
+                String name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+
+                switch (name) {
+                    case "java.lang.String":
+                    case "java.lang.Long":
+                    case "java.lang.Integer":
+                    case "java.lang.Short":
+                    case "java.lang.Byte":
+                    case "java.lang.Double":
+                    case "java.lang.Float":
+                    case "java.lang.Boolean":
+                        return name;
+                    default:
+                        return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    private TypeElement getSuperclass(TypeElement type)
+    {
+        TypeMirror superclass = type.getSuperclass();
+
+        if (superclass.getKind() != TypeKind.DECLARED)
+            return null;
+
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return "java.lang.Object".equals(element.getQualifiedName().toString()) ? null : element;
+    }
+
+    private static class MappedField
+    {
+        final String name;
+        final String column;
+        final String kind;
+
+        MappedField(String name, String column, String kind)
+        {
+            this.name = name;
+            this.column = column;
+            this.kind = kind;
+        }
+
+        String getBindCode(String position)
+        {
+            String value = "object." + name;
+
+            switch (kind) {
+                case "long":
+                case "int":
+                case "short":
+                case "byte":
+                    return "statement.bindLong(" + position + ", " + value + ");";
+                case "double":
+                case "float":
+                    return "statement.bindDouble(" + position + ", " + value + ");";
+                case "boolean":
+                    return "statement.bindLong(" + position + ", " + value + " ? 1 : 0);";
+                case "java.lang.String":
+                    return getNullableBindCode(position, value, "bindString", value);
+                case "byte[]":
+                    return getNullableBindCode(position, value, "bindBlob", value);
+                case "java.lang.Double":
+                case "java.lang.Float":
+                    return getNullableBindCode(position, value, "bindDouble", value + ".doubleValue()");
+                case "java.lang.Boolean":
+                    return getNullableBindCode(position, value, "bindLong", value + " ? 1 : 0");
+                default:
+                    return getNullableBindCode(position, value, "bindLong", value + ".longValue()");
+            }
+        }
+
+        private static String getNullableBindCode(String position, String value, String method, String bound)
+        {
+            return "if (" + value + " == null) statement.bindNull(" + position + "); else statement." + method
+                    + "(" + position + ", " + bound + ");";
+        }
+
+        String getReadCode(String index)
+        {
+            String target = "object." + name + " = ";
+
+            switch (kind) {
+                case "long":
+                    return target + "cursor.getLong(" + index + ");";
+                case "int":
+                    return target + "cursor.getInt(" + index + ");";
+                case "short":
+                    return target + "cursor.getShort(" + index + ");";
+                case "byte":
+                    return target + "(byte) cursor.getInt(" + index + ");";
+                case "double":
+                    return target + "cursor.getDouble(" + index + ");";
+                case "float":
+                    return target + "cursor.getFloat(" + index + ");";
+                case "boolean":
+                    return target + "cursor.getInt(" + index + ") != 0;";
+                case "java.lang.String":
+                    return target + "cursor.getString(" + index + ");";
+                case "byte[]":
+                    return target + "cursor.getBlob(" + index + ");";
+                case "java.lang.Long":
+                    return getNullableReadCode(target, index, "cursor.getLong(" + index + ")");
+                case "java.lang.Integer":
+                    return getNullableReadCode(target, index, "cursor.getInt(" + index + ")");
+                case "java.lang.Short":
+                    return getNullableReadCode(target, index, "cursor.getShort(" + index + ")");
+                case "java.lang.Byte":
+                    return getNullableReadCode(target, index, "(byte) cursor.getInt(" + index + ")");
+                case "java.lang.Double":
+                    return getNullableReadCode(target, index, "cursor.getDouble(" + index + ")");
+                case "java.lang.Float":
+                    return getNullableReadCode(target, index, "cursor.getFloat(" + index + ")");
+                default:
+                    return getNullableReadCode(target, index, "cursor.getInt(" + index + ") != 0");
+            }
+        }
+
+        private static String getNullableReadCode(String target, String index, String value)
+        {
+            return target + "cursor.isNull(" + index + ") ? null : " + value + ";";
+        }
+    }
+}
@@ -0,0 +1,39 @@
+# Generated object factories are looked up by a name derived from the name of their class when a query is given a
+# class instead of a factory. The names of the annotated classes are kept so that the lookup still works when the
+# rest is obfuscated, and a factory is only kept as long as its class is. Classes nested deeper than two levels are
+# not covered and should register their factories with ObjectFactories.register.
+-keepnames @com.genonbeta.android.database.annotation.GenerateFactory class *
+
+-if @com.genonbeta.android.database.annotation.GenerateFactory class **
+-keep class <1>_ObjectFactory {
+    public <init>();
+}
+
+-if @com.genonbeta.android.database.annotation.GenerateFactory class **$*
+-keep class <1>_<2>_ObjectFactory {
+    public <init>();
+}
+
+-if @com.genonbeta.android.database.annotation.GenerateFactory class **$*$*
+-keep class <1>_<2>_<3>_ObjectFactory {
+    public <init>();
+}
+
+# Generated row mappers are looked up the same way, and a class that loses its mapper would silently be read and
+# written through ContentValues instead.
+-keepnames @com.genonbeta.android.database.annotation.GenerateMapper class *
+
+-if @com.genonbeta.android.database.annotation.GenerateMapper class **
+-keep class <1>_RowMapper {
+    public <init>();
+}
+
+-if @com.genonbeta.android.database.annotation.GenerateMapper class **$*
+-keep class <1>_<2>_RowMapper {
+    public <init>();
+}
+
+-if @com.genonbeta.android.database.annotation.GenerateMapper class **$*$*
+-keep class <1>_<2>_<3>_RowMapper {
+    public <init>();
+}
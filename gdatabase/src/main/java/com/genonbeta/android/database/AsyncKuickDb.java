@@ -0,0 +1,402 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the operations of a {@link KuickDb} off the calling thread. Writes are queued for a single writer thread so
+ * that they never fight over the database lock, and reads run on a bounded pool which can use the parallel read
+ * connections that write-ahead logging provides. Each queue holds a limited number of operations; when it is full,
+ * the caller is blocked until there is room. A caller interrupted while waiting keeps its interrupt status and gets
+ * a {@link RejectedExecutionException}, as the operation was not queued. The results are returned as
+ * {@link Future}s and can also be delivered to a {@link Callback}.
+ */
+public class AsyncKuickDb
+{
+    public static final int DEFAULT_READER_COUNT = 4;
+    public static final int DEFAULT_MAX_QUEUE_DEPTH = 256;
+
+    private final KuickDb mKuick;
+    private final Lane mWriter;
+    private final Lane mReader;
+    private final Executor mCallbackExecutor;
+
+    public AsyncKuickDb(KuickDb kuick)
+    {
+        this(kuick, DEFAULT_READER_COUNT, DEFAULT_MAX_QUEUE_DEPTH, null);
+    }
+
+    /**
+     * @param callbackExecutor to deliver the callbacks on, or null to deliver them on the worker threads
+     */
+    public AsyncKuickDb(KuickDb kuick, int readerCount, int maxQueueDepth, Executor callbackExecutor)
+    {
+        mKuick = kuick;
+        mWriter = new Lane("KuickDb writer", 1, maxQueueDepth);
+        mReader = new Lane("KuickDb reader", readerCount, maxQueueDepth);
+        mCallbackExecutor = callbackExecutor;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            kuick.setWriteAheadLoggingEnabled(true);
+    }
+
+    public <T, V extends DatabaseObject<T>> Future<List<V>> castQuery(final SQLQuery.Select select,
+                                                                      final Class<V> clazz,
+                                                                      Callback<List<V>> callback)
+    {
+        return read(new Operation<List<V>>()
+        {
+            @Override
+            public List<V> run(KuickDb kuick, SQLiteDatabase db)
+            {
+                return kuick.castQuery(db, select, clazz, null);
+            }
+        }, callback);
+    }
+
+    public KuickDb getKuick()
+    {
+        return mKuick;
+    }
+
+    public Lane getReader()
+    {
+        return mReader;
+    }
+
+    public Future<List<ContentValues>> getTable(final SQLQuery.Select select, Callback<List<ContentValues>> callback)
+    {
+        return read(new Operation<List<ContentValues>>()
+        {
+            @Override
+            public List<ContentValues> run(KuickDb kuick, SQLiteDatabase db)
+            {
+                return kuick.getTable(db, select);
+            }
+        }, callback);
+    }
+
+    public Lane getWriter()
+    {
+        return mWriter;
+    }
+
+    public <T, V extends DatabaseObject<T>> Future<Long> insert(final V object, Callback<Long> callback)
+    {
+        return write(new Operation<Long>()
+        {
+            @Override
+            public Long run(KuickDb kuick, SQLiteDatabase db)
+            {
+                return kuick.insert(db, object, null, null);
+            }
+        }, callback);
+    }
+
+    public <T, V extends DatabaseObject<T>> Future<Boolean> insert(final List<V> objects, final T parent,
+                                                                   final Progress.Listener listener,
+                                                                   Callback<Boolean> callback)
+    {
+        return write(new Operation<Boolean>()
+        {
+            @Override
+            public Boolean run(KuickDb kuick, SQLiteDatabase db)
+            {
+                return kuick.insert(db, objects, parent, listener);
+            }
+        }, callback);
+    }
+
+    public <T, V extends DatabaseObject<T>> Future<Integer> publish(final V object, Callback<Integer> callback)
+    {
+        return write(new Operation<Integer>()
+        {
+            @Override
+            public Integer run(KuickDb kuick, SQLiteDatabase db)
+            {
+                return kuick.publish(db, object, null, null);
+            }
+        }, callback);
+    }
+
+    public <T, V extends DatabaseObject<T>> Future<Boolean> publish(final List<V> objects, final T parent,
+                                                                    final Progress.Listener listener,
+                                                                    Callback<Boolean> callback)
+    {
+        return write(new Operation<Boolean>()
+        {
+            @Override
+            public Boolean run(KuickDb kuick, SQLiteDatabase db)
+            {
+                return kuick.publish(db, objects, parent, listener);
+            }
+        }, callback);
+    }
+
+    /**
+     * Queues an operation for the reader pool. It should not write to the database.
+     */
+    public <R> Future<R> read(Operation<R> operation, Callback<R> callback)
+    {
+        return mReader.submit(operation, false, callback);
+    }
+
+    public Future<Integer> remove(final SQLQuery.Select select, Callback<Integer> callback)
+    {
+        return write(new Operation<Integer>()
+        {
+            @Override
+            public Integer run(KuickDb kuick, SQLiteDatabase db)
+            {
+                return kuick.remove(db, select);
+            }
+        }, callback);
+    }
+
+    public <T, V extends DatabaseObject<T>> Future<Void> remove(final V object, Callback<Void> callback)
+    {
+        return write(new Operation<Void>()
+        {
+            @Override
+            public Void run(KuickDb kuick, SQLiteDatabase db)
+            {
+                kuick.remove(db, object, null, null);
+                return null;
+            }
+        }, callback);
+    }
+
+    public <T, V extends DatabaseObject<T>> Future<Boolean> remove(final List<V> objects, final T parent,
+                                                                   final Progress.Listener listener,
+                                                                   Callback<Boolean> callback)
+    {
+        return write(new Operation<Boolean>()
+        {
+            @Override
+            public Boolean run(KuickDb kuick, SQLiteDatabase db)
+            {
+                return kuick.remove(db, objects, parent, listener);
+            }
+        }, callback);
+    }
+
+    /**
+     * Stops accepting operations and lets the queued ones finish.
+     */
+    public void shutdown()
+    {
+        mWriter.mExecutor.shutdown();
+        mReader.mExecutor.shutdown();
+    }
+
+    public <T, V extends DatabaseObject<T>> Future<Integer> update(final V object, Callback<Integer> callback)
+    {
+        return write(new Operation<Integer>()
+        {
+            @Override
+            public Integer run(KuickDb kuick, SQLiteDatabase db)
+            {
+                return kuick.update(db, object, null, null);
+            }
+        }, callback);
+    }
+
+    public <T, V extends DatabaseObject<T>> Future<Boolean> update(final List<V> objects, final T parent,
+                                                                   final Progress.Listener listener,
+                                                                   Callback<Boolean> callback)
+    {
+        return write(new Operation<Boolean>()
+        {
+            @Override
+            public Boolean run(KuickDb kuick, SQLiteDatabase db)
+            {
+                return kuick.update(db, objects, parent, listener);
+            }
+        }, callback);
+    }
+
+    /**
+     * Queues an operation for the single writer thread.
+     */
+    public <R> Future<R> write(Operation<R> operation, Callback<R> callback)
+    {
+        return mWriter.submit(operation, true, callback);
+    }
+
+    public interface Callback<R>
+    {
+        void onResult(R result);
+
+        void onError(Exception error);
+    }
+
+    public interface Operation<R>
+    {
+        R run(KuickDb kuick, SQLiteDatabase db) throws Exception;
+    }
+
+    public class Lane
+    {
+        private final ExecutorService mExecutor;
+        private final Semaphore mPermits;
+        private final AtomicInteger mDepth = new AtomicInteger();
+        private final AtomicInteger mMaxDepth = new AtomicInteger();
+        private final AtomicLong mCompletedCount = new AtomicLong();
+        private final AtomicLong mFailedCount = new AtomicLong();
+        private final AtomicLong mBlockedCount = new AtomicLong();
+
+        Lane(final String name, int threadCount, int maxQueueDepth)
+        {
+            mPermits = new Semaphore(maxQueueDepth);
+            mExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, name + " #" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        /**
+         * @return how many times a caller had to wait for room in the queue
+         */
+        public long getBlockedCount()
+        {
+            return mBlockedCount.get();
+        }
+
+        public long getCompletedCount()
+        {
+            return mCompletedCount.get();
+        }
+
+        /**
+         * @return the operations that are queued or running
+         */
+        public int getDepth()
+        {
+            return mDepth.get();
+        }
+
+        public long getFailedCount()
+        {
+            return mFailedCount.get();
+        }
+
+        public int getMaxDepth()
+        {
+            return mMaxDepth.get();
+        }
+
+        <R> Future<R> submit(final Operation<R> operation, final boolean writable, final Callback<R> callback)
+        {
+            if (!mPermits.tryAcquire()) {
+                mBlockedCount.incrementAndGet();
+
+                try {
+                    mPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for room in the queue", e);
+                }
+            }
+
+            int depth = mDepth.incrementAndGet();
+            int maxDepth;
+
+            while (depth > (maxDepth = mMaxDepth.get()) && !mMaxDepth.compareAndSet(maxDepth, depth)) {
+                // Retry until the highest depth is recorded.
+            }
+
+            FutureTask<R> task = new FutureTask<R>(new Callable<R>()
+            {
+                @Override
+                public R call() throws Exception
+                {
+                    return operation.run(mKuick, writable ? mKuick.getWritableDatabase()
+                            : mKuick.getReadableDatabase());
+                }
+            })
+            {
+                @Override
+                protected void done()
+                {
+                    mDepth.decrementAndGet();
+                    mPermits.release();
+
+                    if (isCancelled())
+                        return;
+
+                    R result = null;
+                    Exception error = null;
+
+                    try {
+                        result = get();
+                        mCompletedCount.incrementAndGet();
+                    } catch (ExecutionException e) {
+                        mFailedCount.incrementAndGet();
+                        error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    } catch (InterruptedException e) {
+                        error = e;
+                    }
+
+                    if (callback != null)
+                        deliver(callback, result, error);
+                }
+            };
+
+            try {
+                mExecutor.execute(task);
+            } catch (RuntimeException e) {
+                mDepth.decrementAndGet();
+                mPermits.release();
+                throw e;
+            }
+
+            return task;
+        }
+    }
+
+    private <R> void deliver(final Callback<R> callback, final R result, final Exception error)
+    {
+        Runnable delivery = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (error == null)
+                    callback.onResult(result);
+                else
+                    callback.onError(error);
+            }
+        };
+
+        if (mCallbackExecutor == null)
+            delivery.run();
+        else
+            mCallbackExecutor.execute(delivery);
+    }
+}
@@ -0,0 +1,17 @@
+package com.genonbeta.android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.List;
+
+/**
+ * An object whose removal hook can run for many objects at once. When objects of this type are removed in bulk,
+ * {@link #onRemoveObjects} is called on the first object of each chunk instead of
+ * {@link DatabaseObject#onRemoveObject} on every one of them, and the rows of the chunk are then deleted with a single
+ * statement. Removing a single object still calls {@link DatabaseObject#onRemoveObject}.
+ */
+public interface BatchRemovable<T> extends DatabaseObject<T>
+{
+    void onRemoveObjects(SQLiteDatabase db, KuickDb kuick, List<? extends BatchRemovable<T>> objects, T parent,
+                         Progress.Listener listener);
+}
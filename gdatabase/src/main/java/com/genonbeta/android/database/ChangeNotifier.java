@@ -0,0 +1,196 @@
+package com.genonbeta.android.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers the changes collected by {@link KuickDb#append} to in-process listeners when {@link KuickDb#broadcast()}
+ * is called. Each subscription can be limited to a set of tables, and can coalesce the changes arriving within a
+ * window into a single call per table, delivered on the executor it was registered with.
+ */
+public class ChangeNotifier
+{
+    private final KuickDb mKuick;
+    private final List<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService mScheduler;
+
+    public ChangeNotifier(KuickDb kuick)
+    {
+        mKuick = kuick;
+    }
+
+    public void dispatch(List<KuickDb.BroadcastData> changes)
+    {
+        for (Subscription subscription : mSubscriptions)
+            for (KuickDb.BroadcastData data : changes)
+                if (subscription.accepts(data.tableName))
+                    subscription.offer(data);
+    }
+
+    private synchronized ScheduledExecutorService getScheduler()
+    {
+        if (mScheduler == null) {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "KuickDb change notifier");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setKeepAliveTime(10, TimeUnit.SECONDS);
+            scheduler.allowCoreThreadTimeOut(true);
+            mScheduler = scheduler;
+        }
+
+        return mScheduler;
+    }
+
+    public static Executor mainThreadExecutor()
+    {
+        final Handler handler = new Handler(Looper.getMainLooper());
+
+        return new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                handler.post(command);
+            }
+        };
+    }
+
+    public Subscription subscribe(Listener listener, String... tableNames)
+    {
+        return subscribe(listener, null, 0, tableNames);
+    }
+
+    /**
+     * @param listener       to be called once per changed table
+     * @param executor       to deliver the changes on, or null to deliver on the thread that calls
+     *                       {@link KuickDb#broadcast()} or, when the window is not zero, on the notifier thread
+     * @param windowMillis   how long the changes are collected after the first one before they are delivered
+     * @param tableNames     the tables to listen to, or none to listen to all of them
+     */
+    public Subscription subscribe(Listener listener, Executor executor, long windowMillis, String... tableNames)
+    {
+        Subscription subscription = new Subscription(listener, executor, windowMillis, tableNames);
+        mSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription)
+    {
+        mSubscriptions.remove(subscription);
+    }
+
+    public interface Listener
+    {
+        void onDatabaseChange(KuickDb kuick, KuickDb.BroadcastData data);
+    }
+
+    public class Subscription
+    {
+        private final Listener mListener;
+        private final Executor mExecutor;
+        private final long mWindowMillis;
+        private final Set<String> mTableNames;
+        private Map<String, KuickDb.BroadcastData> mPending = new LinkedHashMap<>();
+        private boolean mScheduled;
+
+        private final Runnable mDeliverTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final List<KuickDb.BroadcastData> changes;
+
+                synchronized (Subscription.this) {
+                    changes = new ArrayList<>(mPending.values());
+                    mPending = new LinkedHashMap<>();
+                    mScheduled = false;
+                }
+
+                Runnable notifyTask = new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        for (KuickDb.BroadcastData data : changes)
+                            mListener.onDatabaseChange(mKuick, data);
+                    }
+                };
+
+                if (mExecutor == null)
+                    notifyTask.run();
+                else
+                    mExecutor.execute(notifyTask);
+            }
+        };
+
+        Subscription(Listener listener, Executor executor, long windowMillis, String[] tableNames)
+        {
+            mListener = listener;
+            mExecutor = executor;
+            mWindowMillis = windowMillis;
+            mTableNames = tableNames == null || tableNames.length == 0 ? null
+                    : new HashSet<>(Arrays.asList(tableNames));
+        }
+
+        boolean accepts(String tableName)
+        {
+            return mTableNames == null || mTableNames.contains(tableName);
+        }
+
+        public Listener getListener()
+        {
+            return mListener;
+        }
+
+        void offer(KuickDb.BroadcastData data)
+        {
+            boolean schedule;
+
+            synchronized (this) {
+                KuickDb.BroadcastData pendingData = mPending.get(data.tableName);
+
+                if (pendingData == null)
+                    mPending.put(data.tableName, new KuickDb.BroadcastData(data));
+                else
+                    pendingData.merge(data);
+
+                schedule = !mScheduled;
+                mScheduled = true;
+            }
+
+            if (!schedule)
+                return;
+
+            if (mWindowMillis > 0)
+                getScheduler().schedule(mDeliverTask, mWindowMillis, TimeUnit.MILLISECONDS);
+            else
+                mDeliverTask.run();
+        }
+
+        public void unsubscribe()
+        {
+            ChangeNotifier.this.unsubscribe(this);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.genonbeta.android.database;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a {@link LatencyHistogram} with the row and byte totals for each operation, both overall and per table, and
+ * logs the operations that take longer than the slow operation threshold together with the query they ran.
+ */
+public class HistogramMetrics implements KuickDbMetrics
+{
+    public static final String TAG = HistogramMetrics.class.getSimpleName();
+
+    private final ConcurrentMap<String, Stats> mStats = new ConcurrentHashMap<>();
+    private volatile long mSlowThresholdNanos;
+
+    /**
+     * @param slowThresholdMillis the duration after which an operation is logged as slow, or zero to log none
+     */
+    public HistogramMetrics(long slowThresholdMillis)
+    {
+        setSlowThreshold(slowThresholdMillis);
+    }
+
+    private static String createKey(String operation, String tableName)
+    {
+        return tableName == null ? operation : operation + ":" + tableName;
+    }
+
+    /**
+     * @return the statistics of the operation over all tables, or null if it has not been recorded yet
+     */
+    public Stats getStats(String operation)
+    {
+        return mStats.get(operation);
+    }
+
+    /**
+     * @return the statistics of the operation on the table, or null if it has not been recorded yet
+     */
+    public Stats getStats(String operation, String tableName)
+    {
+        return mStats.get(createKey(operation, tableName));
+    }
+
+    public ConcurrentMap<String, Stats> getAllStats()
+    {
+        return mStats;
+    }
+
+    private Stats obtainStats(String key)
+    {
+        Stats stats = mStats.get(key);
+
+        if (stats == null) {
+            Stats newStats = new Stats();
+            stats = mStats.putIfAbsent(key, newStats);
+
+            if (stats == null)
+                stats = newStats;
+        }
+
+        return stats;
+    }
+
+    @Override
+    public void onOperation(KuickDb kuick, String operation, String tableName, SQLQuery.Select select,
+                            long durationNanos, long rows, long bytes)
+    {
+        obtainStats(operation).record(durationNanos, rows, bytes);
+
+        if (tableName != null)
+            obtainStats(createKey(operation, tableName)).record(durationNanos, rows, bytes);
+
+        long slowThresholdNanos = mSlowThresholdNanos;
+
+        if (slowThresholdNanos > 0 && durationNanos >= slowThresholdNanos)
+            Log.w(TAG, "Slow " + operation + " took " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + " ms; table: "
+                    + tableName + "; rows: " + rows + "; bytes: " + bytes + (select == null ? "" : "; " + select));
+    }
+
+    @Override
+    public void onTransaction(KuickDb kuick, boolean committed, long durationNanos)
+    {
+        obtainStats(OPERATION_TRANSACTION).record(durationNanos, 0, 0);
+
+        long slowThresholdNanos = mSlowThresholdNanos;
+
+        if (slowThresholdNanos > 0 && durationNanos >= slowThresholdNanos)
+            Log.w(TAG, "Slow transaction took " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + " ms; "
+                    + (committed ? "committed" : "rolled back"));
+    }
+
+    public void reset()
+    {
+        mStats.clear();
+    }
+
+    public void setSlowThreshold(long slowThresholdMillis)
+    {
+        mSlowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    }
+
+    public static class Stats
+    {
+        public final LatencyHistogram latency = new LatencyHistogram();
+        public final AtomicLong rows = new AtomicLong();
+        public final AtomicLong bytes = new AtomicLong();
+
+        void record(long durationNanos, long rowCount, long byteCount)
+        {
+            latency.record(durationNanos);
+            rows.addAndGet(rowCount);
+            bytes.addAndGet(byteCount);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.genonbeta.android.database;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Forwards the changes delivered by {@link ChangeNotifier} as {@link KuickDb#ACTION_DATABASE_CHANGE} broadcasts for
+ * the components that live outside of the process or still listen to intents.
+ */
+public class IntentBroadcastAdapter implements ChangeNotifier.Listener
+{
+    private final Context mContext;
+
+    public IntentBroadcastAdapter(Context context)
+    {
+        mContext = context;
+    }
+
+    @Override
+    public void onDatabaseChange(KuickDb kuick, KuickDb.BroadcastData data)
+    {
+        mContext.sendBroadcast(new Intent(KuickDb.ACTION_DATABASE_CHANGE).putExtra(KuickDb.EXTRA_BROADCAST_DATA,
+                data));
+    }
+}
@@ -5,15 +5,43 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.database.SQLException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQuery;
 import android.database.sqlite.SQLiteStatement;
+import android.database.sqlite.SQLiteTransactionListener;
+import android.os.Build;
 import android.util.Log;
+import com.genonbeta.android.database.annotation.NoRemoveHook;
 import com.genonbeta.android.database.exception.ReconstructionFailedException;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Created by: veli
@@ -27,27 +55,143 @@ public abstract class KuickDb extends SQLiteOpenHelper
             EXTRA_BROADCAST_DATA = "extraBroadcastData",
             TYPE_REMOVE = "typeRemove",
             TYPE_INSERT = "typeInsert",
-            TYPE_UPDATE = "typeUpdate";
+            TYPE_UPDATE = "typeUpdate",
+            TYPE_UPSERT = "typeUpsert";
+
+    /**
+     * The default upper bound of host parameters in a single statement for SQLite versions older than 3.32.
+     */
+    public static final int MAX_VARIABLE_NUMBER = 999;
+
+    /**
+     * Rows in a multi-row VALUES clause were limited to SQLITE_MAX_COMPOUND_SELECT before SQLite 3.8.8.
+     */
+    public static final int MAX_ROWS_PER_INSERT = 500;
+
+    /**
+     * The table that keeps the fingerprint of the schema that was last applied to the database.
+     */
+    public static final String TABLE_SCHEMA = "kuick_schema";
+
+    /**
+     * The upper bound of the where clauses joined with OR in a bulk delete, kept well below the default expression
+     * depth limit of SQLite.
+     */
+    public static final int MAX_TERMS_PER_DELETE = 200;
+
+    private static final Pattern KEY_WHERE = Pattern.compile("^\\s*([`\"]?\\w+[`\"]?)\\s*=\\s*\\?\\s*$");
+    private static final Pattern LIMIT_CLAUSE = Pattern.compile(
+            "^\\s*(?:(-?\\d+)(?:\\s+OFFSET\\s+(-?\\d+))?|(-?\\d+)\\s*,\\s*(-?\\d+))\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final ConcurrentMap<Class<?>, Boolean> NO_REMOVE_HOOK_TYPES = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, BroadcastData> mBroadcastOverhead = new ConcurrentHashMap<>();
+    private final ReadWriteLock mBroadcastLock = new ReentrantReadWriteLock();
+    private final ThreadLocal<Deque<Map<String, BroadcastData>>> mTransactionChanges = new ThreadLocal<>();
+    private final ThreadLocal<Deque<Long>> mTransactionStartTimes = new ThreadLocal<>();
+    private final ThreadLocal<Map<String, BroadcastData>> mEndedChanges = new ThreadLocal<>();
+    private final ThreadLocal<SQLiteDatabase> mTransactionDatabase = new ThreadLocal<>();
+    private final ThreadLocal<DeferredChanges> mDeferredChanges = new ThreadLocal<>();
+    private final AtomicInteger mDeferringThreadCount = new AtomicInteger();
+    private final SQLiteTransactionListener mTransactionListener = new SQLiteTransactionListener()
+    {
+        @Override
+        public void onBegin()
+        {
+            Deque<Map<String, BroadcastData>> frames = mTransactionChanges.get();
+
+            if (frames == null) {
+                frames = new ArrayDeque<>();
+                mTransactionChanges.set(frames);
+            }
+
+            frames.push(new HashMap<String, BroadcastData>());
+
+            Deque<Long> startTimes = mTransactionStartTimes.get();
+
+            if (startTimes == null) {
+                startTimes = new ArrayDeque<>();
+                mTransactionStartTimes.set(startTimes);
+            }
+
+            startTimes.push(System.nanoTime());
+        }
+
+        @Override
+        public void onCommit()
+        {
+            Deque<Map<String, BroadcastData>> frames = mTransactionChanges.get();
+            Map<String, BroadcastData> changes = frames.pop();
+            Map<String, BroadcastData> parent = frames.peek();
+
+            for (BroadcastData data : changes.values()) {
+                if (parent == null) {
+                    // The framework calls this before the commit is written, so the changes are held until
+                    // endTransaction returns, or until the transaction is over if it was ended directly on the
+                    // database.
+                    Map<String, BroadcastData> ended = mEndedChanges.get();
+
+                    if (ended == null)
+                        deferChange(mTransactionDatabase.get(), data.tableName, data);
+                    else
+                        ended.put(data.tableName, data);
+                } else {
+                    BroadcastData parentData = parent.get(data.tableName);
+
+                    if (parentData == null)
+                        parent.put(data.tableName, data);
+                    else
+                        parentData.merge(data);
+                }
+            }
+
+            traceTransaction(true);
+        }
 
-    private final List<BroadcastData> mBroadcastOverhead = new ArrayList<>();
+        @Override
+        public void onRollback()
+        {
+            Map<String, BroadcastData> ended = mEndedChanges.get();
+
+            for (String tableName : mTransactionChanges.get().pop().keySet())
+                if (ended == null)
+                    deferChange(mTransactionDatabase.get(), tableName, null);
+                else if (!ended.containsKey(tableName))
+                    ended.put(tableName, null);
+
+            traceTransaction(false);
+        }
+    };
+    private final Map<SQLiteDatabase, StatementCache> mStatementCaches = new HashMap<>();
+    private final ChangeNotifier mChangeNotifier = new ChangeNotifier(this);
+    private final ObjectCache mObjectCache = new ObjectCache(0);
+    private final QueryCache mQueryCache = new QueryCache(0, 0);
+    private final ConcurrentMap<String, AtomicLong> mTableVersions = new ConcurrentHashMap<>();
     private final Context mContext;
+    private ChangeNotifier.Subscription mIntentSubscription;
+    private int mStatementCacheCapacity = StatementCache.DEFAULT_CAPACITY;
+    private boolean mInsertBatching;
+    private ExecutorService mParallelExecutor;
+    private SQLValues mSchema;
+    private volatile KuickDbMetrics mMetrics;
 
     public KuickDb(Context context, String name, SQLiteDatabase.CursorFactory factory, int version)
     {
         super(context, name, factory, version);
         mContext = context;
+        setIntentBroadcastEnabled(true);
     }
 
     public void bindContentValue(SQLiteStatement statement, int iteratorPosition, Object bindingObject)
     {
         if (bindingObject == null)
             statement.bindNull(iteratorPosition);
-        else if (bindingObject instanceof Long)
-            statement.bindLong(iteratorPosition, (Long) bindingObject);
-        else if (bindingObject instanceof Integer)
-            statement.bindLong(iteratorPosition, (Integer) bindingObject);
-        else if (bindingObject instanceof Double)
-            statement.bindDouble(iteratorPosition, (Double) bindingObject);
+        else if (bindingObject instanceof Double || bindingObject instanceof Float)
+            statement.bindDouble(iteratorPosition, ((Number) bindingObject).doubleValue());
+        else if (bindingObject instanceof Long || bindingObject instanceof Integer
+                || bindingObject instanceof Short || bindingObject instanceof Byte)
+            statement.bindLong(iteratorPosition, ((Number) bindingObject).longValue());
+        else if (bindingObject instanceof Boolean)
+            statement.bindLong(iteratorPosition, (Boolean) bindingObject ? 1 : 0);
         else if (bindingObject instanceof byte[])
             statement.bindBlob(iteratorPosition, (byte[]) bindingObject);
         else
@@ -55,6 +199,23 @@ public abstract class KuickDb extends SQLiteOpenHelper
                     ? (String) bindingObject : String.valueOf(bindingObject));
     }
 
+    private int bindContentValues(SQLiteStatement statement, int offset, String[] columns, ContentValues values)
+    {
+        for (String column : columns)
+            bindContentValue(statement, offset++, values.get(column));
+
+        return offset;
+    }
+
+    private int bindWhereArgs(SQLiteStatement statement, int offset, String[] whereArgs)
+    {
+        if (whereArgs != null)
+            for (String arg : whereArgs)
+                bindContentValue(statement, offset++, arg);
+
+        return offset;
+    }
+
     public <T, V extends DatabaseObject<T>> List<V> castQuery(SQLQuery.Select select, final Class<V> clazz)
     {
         return castQuery(select, clazz, null);
@@ -69,35 +230,280 @@ public abstract class KuickDb extends SQLiteOpenHelper
     public <T, V extends DatabaseObject<T>> List<V> castQuery(SQLiteDatabase db, SQLQuery.Select select,
                                                               final Class<V> clazz, CastQueryListener<V> listener)
     {
+        RowMapper<V> mapper = RowMappers.get(clazz);
+
+        // The listeners and the query cache work with the rows as ContentValues, which the mapper skips.
+        if (mapper != null && listener == null && select.loadListener == null && !isQueryCacheable(db, select))
+            return castQuery(db, select, mapper, ObjectFactories.get(clazz));
+
+        return castQuery(db, select, ObjectFactories.get(clazz), listener);
+    }
+
+    /**
+     * Reads the objects with the mapper straight from the cursor. {@link DatabaseObject#reconstruct} is not called.
+     */
+    public <T, V extends DatabaseObject<T>> List<V> castQuery(SQLiteDatabase db, SQLQuery.Select select,
+                                                              RowMapper<V> mapper, ObjectFactory<V> factory)
+    {
+        long startTime = System.nanoTime();
+        boolean measured = mMetrics != null;
+        long bytes = 16;
+        List<V> returnedList = new ArrayList<>();
+        List<String[]> relationKeys = select.relations == null ? null : new ArrayList<String[]>();
+        Cursor cursor = query(db, select);
+
+        try {
+            if (cursor.moveToFirst()) {
+                int[] columnIndexes = mapper.getColumnIndexes(cursor);
+                int[] relationIndexes = relationKeys == null ? null : getRelationIndexes(select, cursor);
+
+                do {
+                    V object = factory.create();
+                    mapper.read(cursor, columnIndexes, object);
+                    snapshot(object);
+
+                    if (measured)
+                        bytes += QueryCache.estimateBytes(cursor, columnIndexes);
+
+                    if (relationKeys != null) {
+                        String[] keys = new String[relationIndexes.length];
+
+                        for (int i = 0; i < relationIndexes.length; i++)
+                            keys[i] = relationIndexes[i] == -1 ? null : cursor.getString(relationIndexes[i]);
+
+                        relationKeys.add(keys);
+                    }
+
+                    returnedList.add(object);
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        loadRelations(db, select, returnedList, relationKeys);
+
+        trace(KuickDbMetrics.OPERATION_CAST_QUERY, select.tableName, select, startTime, returnedList.size(), bytes);
+        return returnedList;
+    }
+
+    public <T, V extends DatabaseObject<T>> List<V> castQuery(SQLQuery.Select select, ObjectFactory<V> factory)
+    {
+        return castQuery(getReadableDatabase(), select, factory, null);
+    }
+
+    public <T, V extends DatabaseObject<T>> List<V> castQuery(SQLiteDatabase db, SQLQuery.Select select,
+                                                              ObjectFactory<V> factory, CastQueryListener<V> listener)
+    {
+        long startTime = System.nanoTime();
+        boolean measured = mMetrics != null;
+        long bytes = 16;
         List<V> returnedList = new ArrayList<>();
-        List<ContentValues> itemList = getTable(db, select);
+        List<String[]> relationKeys = select.relations == null ? null : new ArrayList<String[]>();
+        Iterator<ContentValues> rows = isQueryCacheable(db, select) ? getTable(db, select).iterator()
+                : openTable(db, select, false);
 
         try {
-            for (ContentValues item : itemList) {
-                V newClazz = clazz.newInstance();
+            while (rows.hasNext()) {
+                ContentValues item = rows.next();
+                V newClazz = factory.create();
                 newClazz.reconstruct(db, this, item);
+                snapshot(newClazz);
+
+                if (measured)
+                    bytes += QueryCache.estimateBytes(item);
 
                 if (listener != null)
                     listener.onObjectReconstructed(this, item, newClazz);
 
+                if (relationKeys != null)
+                    relationKeys.add(readRelationKeys(select, item));
+
                 returnedList.add(newClazz);
             }
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InstantiationException e) {
-            e.printStackTrace();
+        } finally {
+            if (rows instanceof TableCursor)
+                ((TableCursor) rows).close();
+        }
+
+        loadRelations(db, select, returnedList, relationKeys);
+        trace(KuickDbMetrics.OPERATION_CAST_QUERY, select.tableName, select, startTime, returnedList.size(), bytes);
+        return returnedList;
+    }
+
+    public <T, V extends DatabaseObject<T>> List<V> castQueryParallel(SQLQuery.Select select, Class<V> clazz,
+                                                                      CastQueryListener<V> listener)
+    {
+        return castQueryParallel(getReadableDatabase(), select, ObjectFactories.get(clazz), listener,
+                getParallelExecutor());
+    }
+
+    /**
+     * Reconstructs the objects on the given executor for the implementations that run their own queries while they
+     * are being reconstructed. With write-ahead logging enabled, every worker thread reads through a connection of
+     * its own. The objects are returned and passed to the listener in the order of the rows, on the calling thread.
+     * Inside a transaction the workers could not see its uncommitted changes, so the objects are reconstructed on
+     * the calling thread instead.
+     */
+    public <T, V extends DatabaseObject<T>> List<V> castQueryParallel(final SQLiteDatabase db, SQLQuery.Select select,
+                                                                      final ObjectFactory<V> factory,
+                                                                      CastQueryListener<V> listener,
+                                                                      ExecutorService executor)
+    {
+        if (db.inTransaction())
+            return castQuery(db, select, factory, listener);
+
+        long startTime = System.nanoTime();
+        final List<ContentValues> rows = getTable(db, select);
+        final Object[] objects = new Object[rows.size()];
+        int chunkCount = Math.max(1, Runtime.getRuntime().availableProcessors() * 4);
+        int chunkSize = Math.max(1, (rows.size() + chunkCount - 1) / chunkCount);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int start = 0; start < rows.size(); start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(rows.size(), start + chunkSize);
+
+            futures.add(executor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = from; i < to; i++) {
+                        V object = factory.create();
+                        object.reconstruct(db, KuickDb.this, rows.get(i));
+                        snapshot(object);
+                        objects[i] = object;
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (ExecutionException e) {
+            for (Future<?> future : futures)
+                future.cancel(false);
+
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw new IllegalStateException("Reconstruction failed", e.getCause());
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures)
+                future.cancel(true);
+
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reconstructing", e);
+        }
+
+        List<V> returnedList = new ArrayList<>(objects.length);
+        List<String[]> relationKeys = select.relations == null ? null : new ArrayList<String[]>();
+
+        for (int i = 0; i < objects.length; i++) {
+            @SuppressWarnings("unchecked")
+            V object = (V) objects[i];
+
+            if (listener != null)
+                listener.onObjectReconstructed(this, rows.get(i), object);
+
+            if (relationKeys != null)
+                relationKeys.add(readRelationKeys(select, rows.get(i)));
+
+            returnedList.add(object);
         }
 
+        loadRelations(db, select, returnedList, relationKeys);
+
+        if (mMetrics != null)
+            trace(KuickDbMetrics.OPERATION_CAST_QUERY, select.tableName, select, startTime, returnedList.size(),
+                    QueryCache.estimateBytes(rows));
+
         return returnedList;
     }
 
-    public synchronized void append(SQLiteDatabase db, String tableName, String changeType)
+    @Override
+    public synchronized void close()
+    {
+        synchronized (mStatementCaches) {
+            for (StatementCache cache : mStatementCaches.values())
+                cache.clear();
+
+            mStatementCaches.clear();
+        }
+
+        super.close();
+    }
+
+    public <T, V extends DatabaseObject<T>> Page<V> castQueryPage(SQLQuery.Select select, Class<V> clazz, int size,
+                                                                  String token)
+    {
+        return castQueryPage(getReadableDatabase(), select, ObjectFactories.get(clazz), null, size, token);
+    }
+
+    public <T, V extends DatabaseObject<T>> Page<V> castQueryPage(SQLiteDatabase db, SQLQuery.Select select,
+                                                                  ObjectFactory<V> factory,
+                                                                  CastQueryListener<V> listener, int size,
+                                                                  String token)
+    {
+        long startTime = System.nanoTime();
+        boolean measured = mMetrics != null;
+        long bytes = 16;
+        List<V> returnedList = new ArrayList<>();
+        List<String[]> relationKeys = select.relations == null ? null : new ArrayList<String[]>();
+        TableCursor tableCursor = openPage(db, select, size, token);
+        String nextToken = null;
+
+        try {
+            for (int i = 0; i < size && tableCursor.hasNext(); i++) {
+                if (i == size - 1)
+                    nextToken = readSeekToken(tableCursor.getCursor(), select.seekColumns);
+
+                ContentValues item = tableCursor.next();
+                V newClazz = factory.create();
+                newClazz.reconstruct(db, this, item);
+                snapshot(newClazz);
+
+                if (measured)
+                    bytes += QueryCache.estimateBytes(item);
+
+                if (listener != null)
+                    listener.onObjectReconstructed(this, item, newClazz);
+
+                if (relationKeys != null)
+                    relationKeys.add(readRelationKeys(select, item));
+
+                returnedList.add(newClazz);
+            }
+
+            if (!tableCursor.hasNext())
+                nextToken = null;
+        } finally {
+            tableCursor.close();
+        }
+
+        loadRelations(db, select, returnedList, relationKeys);
+        trace(KuickDbMetrics.OPERATION_CAST_QUERY, select.tableName, select, startTime, returnedList.size(), bytes);
+        return new Page<>(returnedList, nextToken);
+    }
+
+    public void append(SQLiteDatabase db, String tableName, String changeType)
     {
         append(db, tableName, changeType, getAffectedRowCount(db));
     }
 
-    public synchronized void append(SQLiteDatabase db, String tableName, String changeType, long affectedRows)
+    /**
+     * Records a change to be delivered with the next {@link #broadcast()}. Inside a transaction started with
+     * {@link #beginTransaction(SQLiteDatabase)}, the change is kept by the calling thread and is only published once
+     * the outermost of those transactions commits; it is dropped if any of them rolls back. Inside a transaction
+     * started directly on the database, the change is kept until that transaction is over and then published, as it
+     * cannot be told whether it committed.
+     */
+    public void append(SQLiteDatabase db, String tableName, String changeType, long affectedRows)
     {
+        publishDeferredChanges();
+
         // If no row were affected, we shouldn't add changelog.
         if (affectedRows <= 0) {
             Log.e(TAG, "Changelog is not added because there is no change. table: " + tableName + "; change: "
@@ -105,44 +511,141 @@ public abstract class KuickDb extends SQLiteOpenHelper
             return;
         }
 
-        BroadcastData data = null;
+        Deque<Map<String, BroadcastData>> frames = mTransactionChanges.get();
 
-        synchronized (mBroadcastOverhead) {
-            for (BroadcastData testedData : mBroadcastOverhead) {
-                if (tableName.equals(testedData.tableName)) {
-                    data = testedData;
-                    break;
-                }
-            }
+        if (frames != null && !frames.isEmpty()) {
+            Map<String, BroadcastData> changes = frames.peek();
+            BroadcastData data = changes.get(tableName);
 
             if (data == null) {
                 data = new BroadcastData(tableName);
-                mBroadcastOverhead.add(data);
+                changes.put(tableName, data);
+            }
+
+            data.record(changeType, affectedRows);
+        } else {
+            BroadcastData data = new BroadcastData(tableName);
+            data.record(changeType, affectedRows);
+
+            if (db.inTransaction())
+                deferChange(db, tableName, data);
+            else {
+                bumpTableVersion(tableName);
+                publishChange(data);
             }
         }
+    }
 
-        switch (changeType) {
-            case TYPE_INSERT:
-                data.inserted = true;
-                break;
-            case TYPE_REMOVE:
-                data.removed = true;
-                break;
-            case TYPE_UPDATE:
-                data.updated = true;
+    /**
+     * Starts a transaction whose changes are only published when it commits and are dropped when it rolls back. It
+     * should be ended with {@link #endTransaction(SQLiteDatabase)}.
+     * <p>
+     * The changes made in a transaction started directly on the database, including the ones of the transactions
+     * started with this method within it, are kept until it is over and then published even if it rolled back, as
+     * that cannot be told from outside. The caches are not used by any thread until then, which is noticed with the
+     * next call on this thread such as {@link #broadcast()}. Callers that want a rollback to drop the changes should
+     * start their transactions with this method instead.
+     */
+    public void beginTransaction(SQLiteDatabase db)
+    {
+        publishDeferredChanges();
+        mTransactionDatabase.set(db);
+        db.beginTransactionWithListener(mTransactionListener);
+    }
+
+    private void bumpTableVersion(String tableName)
+    {
+        AtomicLong version = mTableVersions.get(tableName);
+
+        if (version == null) {
+            AtomicLong newVersion = new AtomicLong();
+            version = mTableVersions.putIfAbsent(tableName, newVersion);
+
+            if (version == null)
+                version = newVersion;
         }
 
-        data.affectedRowCount += affectedRows;
+        version.incrementAndGet();
     }
 
-    public synchronized void broadcast()
+    public void broadcast()
     {
-        synchronized (mBroadcastOverhead) {
-            for (BroadcastData data : mBroadcastOverhead)
-                getContext().sendBroadcast(new Intent(ACTION_DATABASE_CHANGE).putExtra(EXTRA_BROADCAST_DATA, data));
+        List<BroadcastData> changes;
+
+        publishDeferredChanges();
+
+        // Writers only take the shared lock, so the map can be drained safely once they are locked out.
+        mBroadcastLock.writeLock().lock();
+
+        try {
+            if (mBroadcastOverhead.size() == 0)
+                return;
 
+            changes = new ArrayList<>(mBroadcastOverhead.values());
             mBroadcastOverhead.clear();
+        } finally {
+            mBroadcastLock.writeLock().unlock();
+        }
+
+        mChangeNotifier.dispatch(changes);
+    }
+
+    /**
+     * Ends a transaction started with {@link #beginTransaction(SQLiteDatabase)}. When the outermost one commits, its
+     * changes are published after the commit is written, so the listeners never see the rows as they were before it,
+     * nor a commit that fails. If it is nested in a transaction started directly on the database, or is ended
+     * directly on the database, the changes are kept until the database is no longer in a transaction instead.
+     */
+    public void endTransaction(SQLiteDatabase db)
+    {
+        // Holds the committed changes, and the tables of the rolled back ones without any.
+        Map<String, BroadcastData> ended = new HashMap<>();
+        boolean deferred;
+
+        mEndedChanges.set(ended);
+
+        try {
+            db.endTransaction();
+        } finally {
+            mEndedChanges.remove();
+            deferred = db.inTransaction();
+
+            // Readers on other connections would cache the old rows again under a version bumped any earlier.
+            for (Map.Entry<String, BroadcastData> entry : ended.entrySet())
+                if (deferred)
+                    deferChange(db, entry.getKey(), entry.getValue());
+                else
+                    bumpTableVersion(entry.getKey());
         }
+
+        if (!deferred)
+            for (BroadcastData data : ended.values())
+                if (data != null)
+                    publishChange(data);
+
+        publishDeferredChanges();
+    }
+
+    /**
+     * Keeps a change made in a transaction whose commit cannot be seen until the database is no longer in a
+     * transaction on this thread. A null change only makes the version of the table change then.
+     */
+    private void deferChange(SQLiteDatabase db, String tableName, BroadcastData data)
+    {
+        DeferredChanges deferred = mDeferredChanges.get();
+
+        if (deferred == null) {
+            deferred = new DeferredChanges(db);
+            mDeferredChanges.set(deferred);
+            mDeferringThreadCount.incrementAndGet();
+        }
+
+        BroadcastData deferredData = deferred.changes.get(tableName);
+
+        if (deferredData == null)
+            deferred.changes.put(tableName, data);
+        else if (data != null)
+            deferredData.merge(data);
     }
 
     public long getAffectedRowCount(SQLiteDatabase database)
@@ -164,248 +667,1205 @@ public abstract class KuickDb extends SQLiteOpenHelper
         return returnCount;
     }
 
-    public Context getContext()
+    public ChangeNotifier getChangeNotifier()
     {
-        return mContext;
+        return mChangeNotifier;
     }
 
-    public ContentValues getFirstFromTable(SQLQuery.Select select)
+    /**
+     * @return the values that are not in the snapshot or differ from it
+     */
+    private static ContentValues getChangedValues(ContentValues snapshot, ContentValues values)
     {
-        return getFirstFromTable(getReadableDatabase(), select);
+        ContentValues changes = new ContentValues(values);
+
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            String key = entry.getKey();
+
+            if (snapshot.containsKey(key) && isSameValue(snapshot.get(key), entry.getValue()))
+                changes.remove(key);
+        }
+
+        return changes;
     }
 
-    public ContentValues getFirstFromTable(SQLiteDatabase db, SQLQuery.Select select)
+    public Context getContext()
     {
-        List<ContentValues> list = getTable(db, select.setLimit(1));
-        return list.size() > 0 ? list.get(0) : null;
+        return mContext;
     }
 
-    public List<ContentValues> getTable(SQLQuery.Select select)
+    @SuppressWarnings("unchecked")
+    private static ContentValues getSnapshot(Object object)
     {
-        return getTable(getReadableDatabase(), select);
+        return object instanceof TrackedDatabaseObject ? ((TrackedDatabaseObject<?>) object).getSnapshot() : null;
     }
 
-    public List<ContentValues> getTable(SQLiteDatabase db, SQLQuery.Select select)
+    private static int[] getRelationIndexes(SQLQuery.Select select, Cursor cursor)
     {
-        List<ContentValues> list = new ArrayList<>();
-        Cursor cursor = db.query(select.tableName, select.columns, select.where, select.whereArgs, select.groupBy,
-                select.having, select.orderBy, select.limit);
-
-        if (cursor.moveToFirst()) {
-            if (select.loadListener != null)
-                select.loadListener.onOpen(this, cursor);
-
-            int columnCount = cursor.getColumnCount();
-            String[] columns = new String[columnCount];
-            int[] types = new int[columnCount];
-
-            for (int i = 0; i < columnCount; i++) {
-                columns[i] = cursor.getColumnName(i);
-                types[i] = cursor.getType(i);
-            }
-
-            do {
-                ContentValues item = new ContentValues();
-
-                for (int i = 0; i < columnCount; i++) {
-                    String columnName = columns[i];
-                    switch (types[i]) {
-                        case Cursor.FIELD_TYPE_INTEGER:
-                            item.put(columnName, cursor.getLong(i));
-                            break;
-                        case Cursor.FIELD_TYPE_STRING:
-                        case Cursor.FIELD_TYPE_NULL:
-                            item.put(columnName, cursor.getString(i));
-                            break;
-                        case Cursor.FIELD_TYPE_FLOAT:
-                            item.put(columnName, cursor.getFloat(i));
-                            break;
-                        case Cursor.FIELD_TYPE_BLOB:
-                            item.put(columnName, cursor.getBlob(i));
-                            break;
-                    }
-                }
+        int[] indexes = new int[select.relations.size()];
 
-                if (select.loadListener != null)
-                    select.loadListener.onLoad(this, cursor, item);
+        for (int i = 0; i < indexes.length; i++)
+            indexes[i] = cursor.getColumnIndex(select.relations.get(i).parentColumn);
 
-                list.add(item);
-            } while (cursor.moveToNext());
-        }
-
-        cursor.close();
+        return indexes;
+    }
 
-        return list;
+    @SuppressWarnings("unchecked")
+    private static <V> RowMapper<V> getRowMapper(V object)
+    {
+        return (RowMapper<V>) RowMappers.get(object.getClass());
     }
 
-    public <T, V extends DatabaseObject<T>> long insert(V object)
+    private static String[] getSortedColumns(ContentValues values)
     {
-        return insert(getWritableDatabase(), object, null, null);
+        String[] columns = values.keySet().toArray(new String[values.size()]);
+        Arrays.sort(columns);
+        return columns;
     }
 
-    public <T, V extends DatabaseObject<T>> long insert(SQLiteDatabase db, V object, T parent,
-                                                        Progress.Listener listener)
+    /**
+     * @return a number that changes every time a change is recorded for the table, to tell apart the data read
+     * before and after the change; for the changes made in a transaction, only once it has ended
+     */
+    public long getTableVersion(String tableName)
     {
-        object.onCreateObject(db, this, parent, listener);
-        return insert(db, object.getWhere().tableName, null, object.getValues());
+        AtomicLong version = mTableVersions.get(tableName);
+        return version == null ? 0 : version.get();
     }
 
-    public long insert(SQLiteDatabase db, String tableName, String nullColumnHack, ContentValues contentValues)
+    public KuickDbMetrics getMetrics()
     {
-        long insertedId = db.insert(tableName, nullColumnHack, contentValues);
-        append(db, tableName, TYPE_INSERT, insertedId > -1 ? 1 : 0);
-        return insertedId;
+        return mMetrics;
     }
 
-    public <T, V extends DatabaseObject<T>> boolean insert(List<V> objects)
+    public SQLValues getSchema()
     {
-        return insert(getWritableDatabase(), objects, null, null);
+        return mSchema;
     }
 
-    public <T, V extends DatabaseObject<T>> boolean insert(SQLiteDatabase db, List<V> objects, T parent,
-                                                           Progress.Listener listener)
+    public StatementCache getStatementCache(SQLiteDatabase db)
     {
-        db.beginTransaction();
+        synchronized (mStatementCaches) {
+            StatementCache cache = mStatementCaches.get(db);
 
-        try {
-            Progress.addToTotal(listener, objects.size());
+            if (cache == null) {
+                Iterator<StatementCache> iterator = mStatementCaches.values().iterator();
 
-            for (V object : objects) {
-                if (!Progress.call(listener, 1))
-                    break;
+                while (iterator.hasNext()) {
+                    StatementCache staleCache = iterator.next();
 
-                insert(db, object, parent, listener);
+                    if (!staleCache.getDatabase().isOpen()) {
+                        staleCache.clear();
+                        iterator.remove();
+                    }
+                }
+
+                cache = new StatementCache(db, mStatementCacheCapacity);
+                mStatementCaches.put(db, cache);
             }
 
-            db.setTransactionSuccessful();
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            db.endTransaction();
+            return cache;
         }
+    }
 
-        return false;
+    public int getStatementCacheCapacity()
+    {
+        return mStatementCacheCapacity;
     }
 
-    public <T, V extends DatabaseObject<T>> int publish(V object)
+    /**
+     * @return the pool that {@link #castQueryParallel(SQLQuery.Select, Class, CastQueryListener)} uses, with a
+     * thread for each processor
+     */
+    public synchronized ExecutorService getParallelExecutor()
     {
-        return publish(getWritableDatabase(), object, null, null);
+        if (mParallelExecutor == null) {
+            final String name = "KuickDb worker (" + getDatabaseName() + ") #";
+
+            mParallelExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory()
+                    {
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable runnable)
+                        {
+                            Thread thread = new Thread(runnable, name + mCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+
+        return mParallelExecutor;
     }
 
-    public <T, V extends DatabaseObject<T>> int publish(SQLiteDatabase database, V object, T parent,
-                                                        Progress.Listener listener)
+    public ObjectCache getObjectCache()
     {
-        int rowsChanged = update(database, object, parent, listener);
+        return mObjectCache;
+    }
 
-        if (rowsChanged <= 0)
-            rowsChanged = insert(database, object, parent, listener) >= -1 ? 1 : 0;
+    public QueryCache getQueryCache()
+    {
+        return mQueryCache;
+    }
 
-        return rowsChanged;
+    public ContentValues getFirstFromTable(SQLQuery.Select select)
+    {
+        return getFirstFromTable(getReadableDatabase(), select);
     }
 
-    public <T, V extends DatabaseObject<T>> boolean publish(List<V> objects)
+    public ContentValues getFirstFromTable(SQLiteDatabase db, SQLQuery.Select select)
     {
-        return publish(getWritableDatabase(), objects, null, null);
+        List<ContentValues> list = getTable(db, select.setLimit(1));
+        return list.size() > 0 ? list.get(0) : null;
     }
 
-    public <T, V extends DatabaseObject<T>> boolean publish(SQLiteDatabase db, List<V> objectList, T parent,
-                                                            Progress.Listener listener)
+    public Page<ContentValues> getPage(SQLQuery.Select select, int size, String token)
     {
-        db.beginTransaction();
+        return getPage(getReadableDatabase(), select, size, token);
+    }
 
-        try {
-            Progress.addToTotal(listener, objectList.size());
+    public Page<ContentValues> getPage(SQLiteDatabase db, SQLQuery.Select select, int size, String token)
+    {
+        long startTime = System.nanoTime();
+        List<ContentValues> list = new ArrayList<>();
+        TableCursor tableCursor = openPage(db, select, size, token);
+        String nextToken = null;
 
-            for (V object : objectList) {
-                if (!Progress.call(listener, 1))
-                    break;
+        try {
+            for (int i = 0; i < size && tableCursor.hasNext(); i++) {
+                if (i == size - 1)
+                    nextToken = readSeekToken(tableCursor.getCursor(), select.seekColumns);
 
-                publish(db, object, parent, listener);
+                list.add(tableCursor.next());
             }
 
-            db.setTransactionSuccessful();
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
+            if (!tableCursor.hasNext())
+                nextToken = null;
         } finally {
-            db.endTransaction();
+            tableCursor.close();
         }
 
-        return false;
+        if (mMetrics != null)
+            trace(KuickDbMetrics.OPERATION_GET_TABLE, select.tableName, select, startTime, list.size(),
+                    QueryCache.estimateBytes(list));
+
+        return new Page<>(list, nextToken);
     }
 
-    public <T, V extends DatabaseObject<T>> void reconstruct(V object) throws ReconstructionFailedException
+    public RowSet getRowSet(SQLQuery.Select select)
     {
-        reconstruct(getReadableDatabase(), object);
+        return getRowSet(getReadableDatabase(), select);
     }
 
-    public <T, V extends DatabaseObject<T>> void reconstruct(SQLiteDatabase db, V object)
-            throws ReconstructionFailedException
+    /**
+     * Loads the result into a columnar {@link RowSet}. As no {@link ContentValues} are created for the rows,
+     * {@link SQLQuery.Select.LoadListener#onLoad} is not called.
+     */
+    public RowSet getRowSet(SQLiteDatabase db, SQLQuery.Select select)
     {
-        ContentValues item = getFirstFromTable(db, object.getWhere());
-
-        if (item == null) {
-            SQLQuery.Select select = object.getWhere();
-            StringBuilder whereArgs = new StringBuilder();
+        Cursor cursor = query(db, select);
 
-            for (String arg : select.whereArgs) {
-                if (whereArgs.length() > 0)
-                    whereArgs.append(", ");
+        try {
+            if (select.loadListener != null && cursor.moveToFirst())
+                select.loadListener.onOpen(this, cursor);
+
+            return RowSet.read(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public List<ContentValues> getTable(SQLQuery.Select select)
+    {
+        return getTable(getReadableDatabase(), select);
+    }
+
+    public List<ContentValues> getTable(SQLiteDatabase db, SQLQuery.Select select)
+    {
+        long startTime = System.nanoTime();
+        List<ContentValues> list;
+
+        if (isQueryCacheable(db, select)) {
+            long[] tableVersions = getTableVersions(select);
+            list = mQueryCache.get(select, tableVersions);
+
+            if (list == null) {
+                list = readTable(db, select);
+                mQueryCache.put(select, tableVersions, list);
+            }
+        } else
+            list = readTable(db, select);
+
+        if (mMetrics != null)
+            trace(KuickDbMetrics.OPERATION_GET_TABLE, select.tableName, select, startTime, list.size(),
+                    QueryCache.estimateBytes(list));
+
+        return list;
+    }
+
+    private long[] getTableVersions(SQLQuery.Select select)
+    {
+        int dependencyCount = select.dependencies == null ? 0 : select.dependencies.length;
+        long[] versions = new long[dependencyCount + 1];
+        versions[0] = getTableVersion(select.tableName);
+
+        for (int i = 0; i < dependencyCount; i++)
+            versions[i + 1] = getTableVersion(select.dependencies[i]);
+
+        return versions;
+    }
+
+    private List<ContentValues> readTable(SQLiteDatabase db, SQLQuery.Select select)
+    {
+        List<ContentValues> list = new ArrayList<>();
+        TableCursor tableCursor = openTable(db, select, false);
+
+        try {
+            for (ContentValues item : tableCursor)
+                list.add(item);
+        } finally {
+            tableCursor.close();
+        }
+
+        return list;
+    }
+
+    public <T, V extends DatabaseObject<T>> long insert(V object)
+    {
+        return insert(getWritableDatabase(), object, null, null);
+    }
+
+    public <T, V extends DatabaseObject<T>> long insert(SQLiteDatabase db, V object, T parent,
+                                                        Progress.Listener listener)
+    {
+        object.onCreateObject(db, this, parent, listener);
+
+        RowMapper<V> mapper = getRowMapper(object);
+        long insertedId = mapper == null ? insert(db, object.getWhere().tableName, null, object.getValues())
+                : insert(db, object.getWhere().tableName, object, mapper);
+
+        if (insertedId > -1)
+            snapshot(object);
+
+        return insertedId;
+    }
+
+    public <V> long insert(SQLiteDatabase db, String tableName, V object, RowMapper<V> mapper)
+    {
+        long startTime = System.nanoTime();
+        StatementCache.Key key = StatementCache.Key.forInsert(tableName, mapper.getColumns());
+        StatementCache cache = getStatementCache(db);
+        long insertedId;
+
+        synchronized (cache) {
+            SQLiteStatement statement = null;
+
+            try {
+                statement = mStatementCacheCapacity > 0 ? cache.acquire(key) : db.compileStatement(key.toSql());
+                mapper.bind(statement, 1, object);
+                insertedId = statement.executeInsert();
+            } catch (SQLException e) {
+                Log.e(TAG, "Error inserting into " + tableName, e);
+                insertedId = -1;
+            } finally {
+                if (statement != null)
+                    releaseStatement(statement);
+            }
+        }
+
+        append(db, tableName, TYPE_INSERT, insertedId > -1 ? 1 : 0);
+        trace(KuickDbMetrics.OPERATION_INSERT, tableName, null, startTime, insertedId > -1 ? 1 : 0, 0);
+        return insertedId;
+    }
+
+    public long insert(SQLiteDatabase db, String tableName, String nullColumnHack, ContentValues contentValues)
+    {
+        long startTime = System.nanoTime();
+        long insertedId = executeInsert(db, tableName, nullColumnHack, contentValues);
+        append(db, tableName, TYPE_INSERT, insertedId > -1 ? 1 : 0);
+        trace(KuickDbMetrics.OPERATION_INSERT, tableName, null, startTime, insertedId > -1 ? 1 : 0, 0);
+        return insertedId;
+    }
+
+    private long executeInsert(SQLiteDatabase db, String tableName, String nullColumnHack,
+                               ContentValues contentValues)
+    {
+        if (mStatementCacheCapacity <= 0 || contentValues == null || contentValues.size() == 0)
+            return db.insert(tableName, nullColumnHack, contentValues);
+
+        String[] columns = getSortedColumns(contentValues);
+        StatementCache cache = getStatementCache(db);
+
+        synchronized (cache) {
+            SQLiteStatement statement = null;
+
+            try {
+                statement = cache.acquire(StatementCache.Key.forInsert(tableName, columns));
+                bindContentValues(statement, 1, columns, contentValues);
+                return statement.executeInsert();
+            } catch (SQLException e) {
+                Log.e(TAG, "Error inserting into " + tableName, e);
+                return -1;
+            } finally {
+                if (statement != null)
+                    statement.clearBindings();
+            }
+        }
+    }
+
+    public <T, V extends DatabaseObject<T>> boolean insert(List<V> objects)
+    {
+        return insert(getWritableDatabase(), objects, null, null);
+    }
+
+    public <T, V extends DatabaseObject<T>> boolean insert(SQLiteDatabase db, List<V> objects, T parent,
+                                                           Progress.Listener listener)
+    {
+        beginTransaction(db);
+
+        try {
+            Progress.begin(listener);
+            Progress.addToTotal(listener, objects.size());
+
+            if (isInsertBatchingSupported())
+                insertInBatches(db, objects, parent, listener);
+            else
+                for (V object : objects) {
+                    if (!Progress.call(listener, 1))
+                        break;
+
+                    insert(db, object, parent, listener);
+                }
+
+            db.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            endTransaction(db);
+        }
+
+        return false;
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db)
+    {
+        super.onOpen(db);
+
+        if (mSchema != null && !db.isReadOnly())
+            syncSchema(db, mSchema);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> void loadRelations(SQLiteDatabase db, SQLQuery.Select select, List<V> parents,
+                                   List<String[]> relationKeys)
+    {
+        if (relationKeys == null || parents.size() == 0)
+            return;
+
+        for (int i = 0; i < select.relations.size(); i++)
+            loadRelation(db, (SQLQuery.Relation<Object, DatabaseObject<Object>>) select.relations.get(i),
+                    (List<Object>) parents, relationKeys, i);
+    }
+
+    private <P, T, C extends DatabaseObject<T>> void loadRelation(SQLiteDatabase db,
+                                                                  final SQLQuery.Relation<P, C> relation,
+                                                                  List<P> parents, List<String[]> relationKeys,
+                                                                  int index)
+    {
+        final Map<String, List<C>> children = new HashMap<>();
+        Set<String> keySet = new LinkedHashSet<>();
+
+        for (String[] keys : relationKeys)
+            if (keys[index] != null)
+                keySet.add(keys[index]);
+
+        List<String> keys = new ArrayList<>(keySet);
+        String[] whereArgs = relation.select.whereArgs == null ? new String[0] : relation.select.whereArgs;
+        boolean hasWhere = relation.select.where != null && relation.select.where.length() > 0;
+        int chunkSize = Math.max(1, MAX_VARIABLE_NUMBER - whereArgs.length);
+        CastQueryListener<C> listener = new CastQueryListener<C>()
+        {
+            @Override
+            public void onObjectReconstructed(KuickDb manager, ContentValues item, C object)
+            {
+                String key = item.getAsString(relation.childColumn);
+                List<C> list = children.get(key);
+
+                if (list == null) {
+                    list = new ArrayList<>();
+                    children.put(key, list);
+                }
+
+                list.add(object);
+            }
+        };
+
+        for (int start = 0; start < keys.size(); start += chunkSize) {
+            List<String> chunk = keys.subList(start, Math.min(keys.size(), start + chunkSize));
+            StringBuilder where = new StringBuilder();
+            String[] args = Arrays.copyOf(whereArgs, whereArgs.length + chunk.size());
+
+            if (hasWhere)
+                where.append("(")
+                        .append(relation.select.where)
+                        .append(") AND ");
+
+            where.append(relation.childColumn)
+                    .append(" IN (");
+
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0)
+                    where.append(", ");
+
+                where.append("?");
+                args[whereArgs.length + i] = chunk.get(i);
+            }
+
+            where.append(")");
+            castQuery(db, relation.select.copy().setWhere(where.toString(), args), relation.childType, listener);
+        }
+
+        for (int i = 0; i < parents.size(); i++) {
+            String key = relationKeys.get(i)[index];
+            List<C> list = key == null ? null : children.get(key);
+
+            relation.onLoad(parents.get(i), list == null ? new ArrayList<C>() : list);
+        }
+    }
+
+    public <T, V extends DatabaseObject<T>> ObjectCursor<V> openQuery(SQLQuery.Select select, Class<V> clazz)
+    {
+        return openQuery(getReadableDatabase(), select, ObjectFactories.get(clazz), null);
+    }
+
+    /**
+     * Streaming version of {@link #castQuery(SQLiteDatabase, SQLQuery.Select, ObjectFactory, CastQueryListener)}.
+     * The objects are reconstructed as they are iterated and all of them receive the same row buffer, so neither the
+     * rows nor the objects are kept unless the caller does so.
+     */
+    public <T, V extends DatabaseObject<T>> ObjectCursor<V> openQuery(SQLiteDatabase db, SQLQuery.Select select,
+                                                                     ObjectFactory<V> factory,
+                                                                     CastQueryListener<V> listener)
+    {
+        return new ObjectCursor<>(db, this, openTable(db, select, true), factory, listener);
+    }
+
+    public TableCursor openTable(SQLQuery.Select select)
+    {
+        return openTable(getReadableDatabase(), select, true);
+    }
+
+    public TableCursor openTable(SQLiteDatabase db, SQLQuery.Select select, boolean reuseItem)
+    {
+        return new TableCursor(this, select, query(db, select), reuseItem);
+    }
+
+    private TableCursor openPage(SQLiteDatabase db, SQLQuery.Select select, int size, String token)
+    {
+        if (size <= 0)
+            throw new IllegalArgumentException("Page size should be greater than zero: " + size);
+
+        // One more row is requested to learn whether there is a next page without running another query.
+        return openTable(db, select.createPage(token == null ? null : Page.readToken(token), size + 1), false);
+    }
+
+    private <T, V extends DatabaseObject<T>> void insertInBatches(SQLiteDatabase db, List<V> objects, T parent,
+                                                                  Progress.Listener listener)
+    {
+        List<Object> pendingRows = new ArrayList<>();
+        String pendingTable = null;
+        String[] pendingColumns = null;
+        RowMapper<?> pendingMapper = null;
+        int chunkSize = 0;
+
+        for (V object : objects) {
+            if (!Progress.call(listener, 1))
+                break;
+
+            object.onCreateObject(db, this, parent, listener);
+
+            String tableName = object.getWhere().tableName;
+            RowMapper<V> mapper = getRowMapper(object);
+            String[] columns;
+            Object row;
+
+            if (mapper != null) {
+                columns = mapper.getColumns();
+                row = object;
+            } else {
+                ContentValues values = object.getValues();
+
+                if (values == null || values.size() == 0) {
+                    insertChunk(db, pendingTable, pendingColumns, pendingMapper, pendingRows);
+                    insert(db, tableName, null, values);
+                    continue;
+                }
+
+                columns = getSortedColumns(values);
+                row = values;
+            }
+
+            // Rows are only grouped while they are consecutive so that the insertion order is kept.
+            if (pendingRows.size() > 0 && (!tableName.equals(pendingTable) || mapper != pendingMapper
+                    || !Arrays.equals(columns, pendingColumns)))
+                insertChunk(db, pendingTable, pendingColumns, pendingMapper, pendingRows);
+
+            if (pendingRows.size() == 0) {
+                pendingTable = tableName;
+                pendingColumns = columns;
+                pendingMapper = mapper;
+                chunkSize = Math.min(MAX_ROWS_PER_INSERT, Math.max(1, MAX_VARIABLE_NUMBER / columns.length));
+            }
+
+            pendingRows.add(row);
+
+            if (pendingRows.size() >= chunkSize)
+                insertChunk(db, pendingTable, pendingColumns, pendingMapper, pendingRows);
+        }
+
+        insertChunk(db, pendingTable, pendingColumns, pendingMapper, pendingRows);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void insertChunk(SQLiteDatabase db, String tableName, String[] columns, RowMapper<?> mapper,
+                             List<Object> rows)
+    {
+        if (rows.size() == 0)
+            return;
+
+        RowMapper<Object> rowMapper = (RowMapper<Object>) mapper;
+
+        if (rows.size() == 1) {
+            insertRow(db, tableName, rowMapper, rows.get(0));
+            rows.clear();
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        StatementCache.Key key = StatementCache.Key.forInsert(tableName, columns, rows.size());
+        StatementCache cache = getStatementCache(db);
+        boolean inserted = false;
+
+        synchronized (cache) {
+            SQLiteStatement statement = null;
+
+            try {
+                statement = mStatementCacheCapacity > 0 ? cache.acquire(key) : db.compileStatement(key.toSql());
+                int position = 1;
+
+                for (Object row : rows)
+                    position = rowMapper == null ? bindContentValues(statement, position, columns,
+                            (ContentValues) row) : rowMapper.bind(statement, position, row);
+
+                statement.executeInsert();
+                inserted = true;
+            } catch (SQLException e) {
+                Log.e(TAG, "Batch insert failed, rows will be inserted one by one; table: " + tableName, e);
+            } finally {
+                if (statement != null)
+                    releaseStatement(statement);
+            }
+        }
+
+        // A failed statement is rolled back as a whole, so retrying row by row keeps the old per-row behavior where
+        // only the conflicting rows are dropped.
+        if (inserted) {
+            append(db, tableName, TYPE_INSERT, rows.size());
+            trace(KuickDbMetrics.OPERATION_INSERT, tableName, null, startTime, rows.size(), 0);
+        } else
+            for (Object row : rows)
+                insertRow(db, tableName, rowMapper, row);
+
+        rows.clear();
+    }
+
+    private void insertRow(SQLiteDatabase db, String tableName, RowMapper<Object> mapper, Object row)
+    {
+        if (mapper == null)
+            insert(db, tableName, null, (ContentValues) row);
+        else
+            insert(db, tableName, row, mapper);
+    }
+
+    public boolean isIntentBroadcastEnabled()
+    {
+        return mIntentSubscription != null;
+    }
+
+    public boolean isInsertBatching()
+    {
+        return mInsertBatching;
+    }
+
+    private static boolean isSameValue(Object oldValue, Object value)
+    {
+        if (oldValue == null || value == null)
+            return oldValue == value;
+
+        if (oldValue instanceof byte[] && value instanceof byte[])
+            return Arrays.equals((byte[]) oldValue, (byte[]) value);
+
+        return oldValue.equals(value);
+    }
+
+    private boolean isObjectCacheable(SQLiteDatabase db)
+    {
+        publishDeferredChanges();
+
+        // As with the query cache, the rows read within a transaction are not kept.
+        return mObjectCache.isEnabled() && !db.inTransaction() && mDeferringThreadCount.get() == 0;
+    }
+
+    private boolean isQueryCacheable(SQLiteDatabase db, SQLQuery.Select select)
+    {
+        publishDeferredChanges();
+
+        // Load listeners expect to see the cursor, so their queries always go to the database. The rows read within a
+        // transaction may never be committed, and the versions are only bumped once it ends. While the changes of a
+        // transaction started directly on the database are held, the versions cannot tell when it committed.
+        return mQueryCache.isEnabled() && select.loadListener == null && !db.inTransaction()
+                && mDeferringThreadCount.get() == 0;
+    }
+
+    private boolean isInsertBatchingSupported()
+    {
+        // Multi-row VALUES clauses are available since SQLite 3.7.11 which ships with Jelly Bean.
+        return mInsertBatching && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    public <T, V extends DatabaseObject<T>> int publish(V object)
+    {
+        return publish(getWritableDatabase(), object, null, null);
+    }
+
+    /**
+     * Updates the row of the object, or inserts it when there is none. For the tables with conflict keys, the objects
+     * without a snapshot are written with a single upsert statement instead. Their row is looked up by the conflict
+     * keys first so that they receive {@link DatabaseObject#onCreateObject} when it is new and
+     * {@link DatabaseObject#onUpdateObject} otherwise.
+     */
+    public <T, V extends DatabaseObject<T>> int publish(SQLiteDatabase database, V object, T parent,
+                                                        Progress.Listener listener)
+    {
+        long startTime = System.nanoTime();
+        String tableName = object.getWhere().tableName;
+        String[] conflictKeys = getUpsertConflictKeys(tableName);
+        int rowsChanged;
+
+        // An object with a snapshot is known to have its row, so only the changed columns are updated.
+        if (conflictKeys != null && getSnapshot(object) == null) {
+            if (hasConflictingRow(database, tableName, conflictKeys, object.getValues()))
+                object.onUpdateObject(database, this, parent, listener);
+            else
+                object.onCreateObject(database, this, parent, listener);
+
+            RowMapper<V> mapper = getRowMapper(object);
+
+            if (mapper != null)
+                rowsChanged = upsert(database, tableName, conflictKeys, object, mapper);
+            else
+                rowsChanged = upsert(database, tableName, conflictKeys, object.getValues());
+
+            if (rowsChanged > 0)
+                snapshot(object);
+        } else {
+            rowsChanged = update(database, object, parent, listener);
+
+            if (rowsChanged <= 0)
+                rowsChanged = insert(database, object, parent, listener) >= 0 ? 1 : 0;
+        }
+
+        trace(KuickDbMetrics.OPERATION_PUBLISH, tableName, null, startTime, rowsChanged, 0);
+        return rowsChanged;
+    }
+
+    public <T, V extends DatabaseObject<T>> boolean publish(List<V> objects)
+    {
+        return publish(getWritableDatabase(), objects, null, null);
+    }
+
+    public <T, V extends DatabaseObject<T>> boolean publish(SQLiteDatabase db, List<V> objectList, T parent,
+                                                            Progress.Listener listener)
+    {
+        beginTransaction(db);
+
+        try {
+            Progress.begin(listener);
+            Progress.addToTotal(listener, objectList.size());
+
+            for (V object : objectList) {
+                if (!Progress.call(listener, 1))
+                    break;
+
+                publish(db, object, parent, listener);
+            }
+
+            db.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            endTransaction(db);
+        }
+
+        return false;
+    }
+
+    private void releaseStatement(SQLiteStatement statement)
+    {
+        statement.clearBindings();
+
+        // Statements that did not come from the cache are not reused.
+        if (mStatementCacheCapacity <= 0)
+            statement.close();
+    }
+
+    /**
+     * Publishes the changes kept by {@link #deferChange} once the database is no longer in a transaction on this
+     * thread.
+     */
+    private void publishDeferredChanges()
+    {
+        DeferredChanges deferred = mDeferredChanges.get();
+
+        if (deferred == null || deferred.db.inTransaction())
+            return;
+
+        mDeferredChanges.remove();
+
+        for (String tableName : deferred.changes.keySet())
+            bumpTableVersion(tableName);
+
+        // The versions are bumped first, so a reader that sees the count drop no longer matches the old rows.
+        mDeferringThreadCount.decrementAndGet();
+
+        for (BroadcastData data : deferred.changes.values())
+            if (data != null)
+                publishChange(data);
+    }
+
+    private void publishChange(BroadcastData change)
+    {
+        mBroadcastLock.readLock().lock();
+
+        try {
+            BroadcastData data = mBroadcastOverhead.get(change.tableName);
+
+            if (data == null) {
+                BroadcastData newData = new BroadcastData(change.tableName);
+                data = mBroadcastOverhead.putIfAbsent(change.tableName, newData);
+
+                if (data == null)
+                    data = newData;
+            }
+
+            synchronized (data) {
+                data.merge(change);
+            }
+        } finally {
+            mBroadcastLock.readLock().unlock();
+        }
+    }
+
+    private static String[] readRelationKeys(SQLQuery.Select select, ContentValues item)
+    {
+        String[] keys = new String[select.relations.size()];
+
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = item.getAsString(select.relations.get(i).parentColumn);
+
+        return keys;
+    }
+
+    private static String readSchemaFingerprint(SQLiteDatabase db)
+    {
+        // Looking the table up first keeps a missing table from being reported as an error by SQLite.
+        Cursor cursor = db.rawQuery("SELECT `name` FROM `sqlite_master` WHERE `type` = 'table' AND `name` = ?",
+                new String[]{TABLE_SCHEMA});
+
+        try {
+            if (!cursor.moveToFirst())
+                return null;
+        } finally {
+            cursor.close();
+        }
+
+        cursor = db.rawQuery("SELECT `fingerprint` FROM `" + TABLE_SCHEMA + "`", null);
+
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Runs the query, binding the {@link SQLQuery.Select#typedWhereArgs} of a page with their types when it has them.
+     */
+    private static Cursor query(SQLiteDatabase db, SQLQuery.Select select)
+    {
+        if (select.typedWhereArgs == null)
+            return db.query(select.tableName, select.columns, select.where, select.whereArgs, select.groupBy,
+                    select.having, select.orderBy, select.limit);
+
+        return db.queryWithFactory(new TypedArgsCursorFactory(select.typedWhereArgs), false, select.tableName,
+                select.columns, select.where, select.whereArgs, select.groupBy, select.having, select.orderBy,
+                select.limit);
+    }
+
+    private static String readSeekToken(Cursor cursor, String[] seekColumns)
+    {
+        Object[] values = new Object[seekColumns.length];
+
+        for (int i = 0; i < seekColumns.length; i++) {
+            int index = cursor.getColumnIndexOrThrow(seekColumns[i]);
+
+            switch (cursor.getType(index)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    throw new IllegalStateException("Seek column " + seekColumns[i] + " cannot be null");
+                case Cursor.FIELD_TYPE_FLOAT:
+                    // SQLite converts REAL values to text with 15 significant digits only, which is not enough to
+                    // tell apart the keys at the page boundary.
+                    values[i] = cursor.getDouble(index);
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    values[i] = cursor.getLong(index);
+                    break;
+                default:
+                    values[i] = cursor.getString(index);
+            }
+        }
+
+        return Page.createToken(values);
+    }
+
+    public <T, V extends DatabaseObject<T>> void reconstruct(V object) throws ReconstructionFailedException
+    {
+        reconstruct(getReadableDatabase(), object);
+    }
+
+    public <T, V extends DatabaseObject<T>> void reconstruct(SQLiteDatabase db, V object)
+            throws ReconstructionFailedException
+    {
+        long startTime = System.nanoTime();
+        RowMapper<V> mapper = getRowMapper(object);
+
+        if (mapper != null && !isObjectCacheable(db) && !isQueryCacheable(db, object.getWhere())) {
+            reconstruct(db, object, mapper);
+            snapshot(object);
+            trace(KuickDbMetrics.OPERATION_RECONSTRUCT, object.getWhere().tableName, object.getWhere(), startTime,
+                    1, 0);
+            return;
+        }
+
+        ContentValues item;
+
+        if (isObjectCacheable(db)) {
+            SQLQuery.Select select = object.getWhere();
+            long tableVersion = getTableVersion(select.tableName);
+            item = mObjectCache.get(select, tableVersion);
+
+            if (item == null) {
+                item = getFirstFromTable(db, select);
+
+                if (item != null)
+                    mObjectCache.put(select, tableVersion, item);
+            }
+        } else
+            item = getFirstFromTable(db, object.getWhere());
+
+        if (item == null)
+            throw createReconstructionFailure(object.getWhere());
+
+        object.reconstruct(db, this, item);
+        snapshot(object);
+        trace(KuickDbMetrics.OPERATION_RECONSTRUCT, object.getWhere().tableName, object.getWhere(), startTime, 1,
+                0);
+    }
+
+    public <V extends BaseDatabaseObject> void reconstruct(SQLiteDatabase db, V object, RowMapper<V> mapper)
+            throws ReconstructionFailedException
+    {
+        SQLQuery.Select select = object.getWhere();
+        Cursor cursor = db.query(select.tableName, select.columns, select.where, select.whereArgs, select.groupBy,
+                select.having, select.orderBy, "1");
+
+        try {
+            if (!cursor.moveToFirst())
+                throw createReconstructionFailure(select);
+
+            mapper.read(cursor, mapper.getColumnIndexes(cursor), object);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ReconstructionFailedException createReconstructionFailure(SQLQuery.Select select)
+    {
+        StringBuilder whereArgs = new StringBuilder();
+
+        for (String arg : select.whereArgs) {
+            if (whereArgs.length() > 0)
+                whereArgs.append(", ");
+
+            whereArgs.append("[] ");
+            whereArgs.append(arg);
+        }
+
+        return new ReconstructionFailedException("No data was returned from: query" + "; tableName: "
+                + select.tableName + "; where: " + select.where + "; whereArgs: " + whereArgs.toString());
+    }
+
+    public <T, V extends DatabaseObject<T>> void remove(V object)
+    {
+        remove(getWritableDatabase(), object, null, null);
+    }
+
+    public <T, V extends DatabaseObject<T>> void remove(SQLiteDatabase db, V object, T parent,
+                                                        Progress.Listener listener)
+    {
+        object.onRemoveObject(db, this, parent, listener);
+        remove(db, object.getWhere());
+    }
+
+    public int remove(SQLQuery.Select select)
+    {
+        return remove(getWritableDatabase(), select);
+    }
+
+    public int remove(SQLiteDatabase db, SQLQuery.Select select)
+    {
+        long startTime = System.nanoTime();
+        int affectedRows = executeDelete(db, select);
+        append(db, select.tableName, TYPE_REMOVE, affectedRows);
+        trace(KuickDbMetrics.OPERATION_REMOVE, select.tableName, select, startTime, affectedRows, 0);
+        return affectedRows;
+    }
+
+    private int executeDelete(SQLiteDatabase db, SQLQuery.Select select)
+    {
+        if (mStatementCacheCapacity <= 0)
+            return db.delete(select.tableName, select.where, select.whereArgs);
+
+        StatementCache cache = getStatementCache(db);
+
+        synchronized (cache) {
+            SQLiteStatement statement = cache.acquire(StatementCache.Key.forDelete(select.tableName, select.where));
+
+            try {
+                bindWhereArgs(statement, 1, select.whereArgs);
+                return statement.executeUpdateDelete();
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    public <T, V extends DatabaseObject<T>> boolean remove(List<V> objects)
+    {
+        return remove(getWritableDatabase(), objects, null, null);
+    }
+
+    public <T, V extends DatabaseObject<T>> boolean remove(SQLiteDatabase db, List<V> objects, T parent,
+                                                           Progress.Listener listener)
+    {
+        beginTransaction(db);
+
+        try {
+            Progress.begin(listener);
+            Progress.addToTotal(listener, objects.size());
+            removeInBatches(db, objects, parent, listener);
+            db.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            endTransaction(db);
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes the objects in order. Consecutive objects of a type that has no remove hook or a batchable one are
+     * deleted in chunks with a single statement each: a where clause of the form {@code key = ?} becomes
+     * {@code key IN (?, ...)} and others are joined with OR. The rest are removed one by one.
+     *
+     * @return the number of rows deleted
+     */
+    private <T, V extends DatabaseObject<T>> int removeInBatches(SQLiteDatabase db, List<V> objects, T parent,
+                                                                 Progress.Listener listener)
+    {
+        List<V> pendingObjects = new ArrayList<>();
+        List<SQLQuery.Select> pendingWheres = new ArrayList<>();
+        Class<?> pendingType = null;
+        int chunkSize = 0;
+        int affectedRows = 0;
+
+        for (V object : objects) {
+            if (!Progress.call(listener, 1))
+                break;
+
+            SQLQuery.Select where = object.getWhere();
+            boolean batchable = !hasRemoveHook(object.getClass()) || object instanceof BatchRemovable;
+
+            if (!batchable || where.where == null || where.where.length() == 0) {
+                affectedRows += removeChunk(db, pendingObjects, pendingWheres, parent, listener);
+                object.onRemoveObject(db, this, parent, listener);
+                affectedRows += remove(db, where);
+                continue;
+            }
+
+            if (pendingObjects.size() > 0 && (object.getClass() != pendingType
+                    || !where.tableName.equals(pendingWheres.get(0).tableName)
+                    || !where.where.equals(pendingWheres.get(0).where)))
+                affectedRows += removeChunk(db, pendingObjects, pendingWheres, parent, listener);
 
-                whereArgs.append("[] ");
-                whereArgs.append(arg);
+            if (pendingObjects.size() == 0) {
+                int argCount = where.whereArgs == null ? 0 : where.whereArgs.length;
+
+                pendingType = object.getClass();
+                chunkSize = getKeyColumn(where) != null ? MAX_VARIABLE_NUMBER
+                        : Math.min(MAX_TERMS_PER_DELETE, Math.max(1, MAX_VARIABLE_NUMBER / Math.max(1, argCount)));
             }
 
-            throw new ReconstructionFailedException("No data was returned from: query" + "; tableName: "
-                    + select.tableName + "; where: " + select.where + "; whereArgs: " + whereArgs.toString());
+            pendingObjects.add(object);
+            pendingWheres.add(where);
+
+            if (pendingObjects.size() >= chunkSize)
+                affectedRows += removeChunk(db, pendingObjects, pendingWheres, parent, listener);
         }
 
-        object.reconstruct(db, this, item);
+        affectedRows += removeChunk(db, pendingObjects, pendingWheres, parent, listener);
+        return affectedRows;
     }
 
-    public <T, V extends DatabaseObject<T>> void remove(V object)
+    @SuppressWarnings("unchecked")
+    private <T, V extends DatabaseObject<T>> int removeChunk(SQLiteDatabase db, List<V> objects,
+                                                             List<SQLQuery.Select> wheres, T parent,
+                                                             Progress.Listener listener)
     {
-        remove(getWritableDatabase(), object, null, null);
-    }
+        if (objects.size() == 0)
+            return 0;
 
-    public <T, V extends DatabaseObject<T>> void remove(SQLiteDatabase db, V object, T parent,
-                                                        Progress.Listener listener)
-    {
-        object.onRemoveObject(db, this, parent, listener);
-        remove(db, object.getWhere());
-    }
+        V first = objects.get(0);
+        SQLQuery.Select template = wheres.get(0);
+        String keyColumn = getKeyColumn(template);
+        StringBuilder where = new StringBuilder();
+        List<String> args = new ArrayList<>();
 
-    public int remove(SQLQuery.Select select)
-    {
-        return remove(getWritableDatabase(), select);
+        if (hasRemoveHook(first.getClass()))
+            ((BatchRemovable<T>) first).onRemoveObjects(db, this, (List<? extends BatchRemovable<T>>) objects,
+                    parent, listener);
+
+        if (keyColumn != null) {
+            where.append(keyColumn)
+                    .append(" IN (");
+
+            for (int i = 0; i < wheres.size(); i++) {
+                if (i > 0)
+                    where.append(", ");
+
+                where.append("?");
+                args.add(wheres.get(i).whereArgs[0]);
+            }
+
+            where.append(")");
+        } else
+            for (SQLQuery.Select select : wheres) {
+                if (where.length() > 0)
+                    where.append(" OR ");
+
+                where.append("(")
+                        .append(select.where)
+                        .append(")");
+
+                if (select.whereArgs != null)
+                    args.addAll(Arrays.asList(select.whereArgs));
+            }
+
+        objects.clear();
+        wheres.clear();
+
+        return remove(db, new SQLQuery.Select(template.tableName).setWhere(where.toString(),
+                args.toArray(new String[args.size()])));
     }
 
-    public int remove(SQLiteDatabase db, SQLQuery.Select select)
+    /**
+     * @return the column of a where clause that matches a single column to a single argument, or null otherwise
+     */
+    private static String getKeyColumn(SQLQuery.Select select)
     {
-        int affectedRows = db.delete(select.tableName, select.where, select.whereArgs);
-        append(db, select.tableName, TYPE_REMOVE, affectedRows);
-        return affectedRows;
+        if (select.whereArgs == null || select.whereArgs.length != 1 || select.whereArgs[0] == null)
+            return null;
+
+        Matcher matcher = KEY_WHERE.matcher(select.where);
+        return matcher.matches() ? matcher.group(1) : null;
     }
 
-    public <T, V extends DatabaseObject<T>> boolean remove(List<V> objects)
+    private static boolean hasRemoveHook(Class<?> type)
     {
-        return remove(getWritableDatabase(), objects, null, null);
+        Boolean noRemoveHook = NO_REMOVE_HOOK_TYPES.get(type);
+
+        if (noRemoveHook == null) {
+            noRemoveHook = type.isAnnotationPresent(NoRemoveHook.class);
+            NO_REMOVE_HOOK_TYPES.put(type, noRemoveHook);
+        }
+
+        return !noRemoveHook;
     }
 
-    public <T, V extends DatabaseObject<T>> boolean remove(SQLiteDatabase db, List<V> objects, T parent,
-                                                           Progress.Listener listener)
+    public <T, V extends DatabaseObject<T>> boolean removeAsObject(SQLiteDatabase db, SQLQuery.Select select,
+                                                                   Class<V> objectType, T parent,
+                                                                   Progress.Listener progressListener,
+                                                                   CastQueryListener<V> queryListener)
     {
-        db.beginTransaction();
+        beginTransaction(db);
 
         try {
-            Progress.addToTotal(listener, objects.size());
-
-            for (V object : objects) {
-                if (!Progress.call(listener, 1))
-                    break;
-
-                remove(db, object, parent, listener);
+            Progress.begin(progressListener);
+
+            if (queryListener == null && !hasRemoveHook(objectType) && select.limit == null && select.groupBy == null
+                    && select.having == null) {
+                // Nothing would look at the objects, so the rows are deleted without being loaded.
+                int affectedRows = remove(db, select);
+                Progress.addToTotal(progressListener, affectedRows);
+                Progress.call(progressListener, affectedRows);
+            } else if (select.limit == null) {
+                // Deleting the rows while a cursor is still reading them would make it skip rows as it moves its
+                // window, so they are loaded a chunk at a time and each query starts over with what is left.
+                SQLQuery.Select chunkSelect = select.copy().setLimit(MAX_VARIABLE_NUMBER);
+
+                while (true) {
+                    List<V> objects = castQuery(db, chunkSelect, objectType, queryListener);
+
+                    if (objects.size() == 0)
+                        break;
+
+                    Progress.addToTotal(progressListener, objects.size());
+                    int affectedRows = removeInBatches(db, objects, parent, progressListener);
+
+                    if (progressListener != null && Progress.dissect(progressListener).isCancelled())
+                        break;
+
+                    if (objects.size() < MAX_VARIABLE_NUMBER)
+                        break;
+
+                    // The rows left behind would be loaded by the next query again, running their hooks twice.
+                    if (affectedRows < objects.size()) {
+                        Log.w(TAG, "Stopped removing since " + (objects.size() - affectedRows)
+                                + " objects did not match their rows; " + select);
+                        break;
+                    }
+                }
+            } else {
+                List<V> objects = castQuery(db, select, objectType, queryListener);
+                Progress.addToTotal(progressListener, objects.size());
+                removeInBatches(db, objects, parent, progressListener);
             }
 
             db.setTransactionSuccessful();
@@ -413,39 +1873,295 @@ public abstract class KuickDb extends SQLiteOpenHelper
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            db.endTransaction();
+            endTransaction(db);
         }
 
         return false;
     }
 
-    public <T, V extends DatabaseObject<T>> boolean removeAsObject(SQLiteDatabase db, SQLQuery.Select select,
-                                                                   Class<V> objectType, T parent,
-                                                                   Progress.Listener progressListener,
-                                                                   CastQueryListener<V> queryListener)
+    public <T, V extends DatabaseObject<T>> List<V> search(SQLQuery.Match match, Class<V> clazz)
     {
-        db.beginTransaction();
+        return search(getReadableDatabase(), match, clazz, null);
+    }
+
+    /**
+     * Runs a full-text query. For a ranked query, only the docid and match info of every matching row are read
+     * first, though still joined with the content table so that the where clause of the query can use its columns.
+     * The full content rows of the best scoring ones, as many as the limit and offset of the query allow, are then
+     * loaded in the order of their scores. The snippet of a row, if requested, can be read from the item given to the
+     * listener.
+     */
+    public <T, V extends DatabaseObject<T>> List<V> search(SQLiteDatabase db, SQLQuery.Match match, Class<V> clazz,
+                                                           final CastQueryListener<V> listener)
+    {
+        if (!match.ranked)
+            return castQuery(db, match.createContentSelect(null), clazz, listener);
+
+        long startTime = System.nanoTime();
+        int[] limitAndOffset = parseLimit(match.limit);
+        int offset = limitAndOffset[1];
+        // The rows before the offset are ranked as well so that it is known which ones to skip.
+        int limit = (int) Math.min(Integer.MAX_VALUE, (long) limitAndOffset[0] + offset);
+
+        PriorityQueue<ScoredRow> bestRows = new PriorityQueue<>();
+        SQLQuery.Select rankSelect = match.createRankSelect();
+        Cursor cursor = db.query(rankSelect.tableName, rankSelect.columns, rankSelect.where, rankSelect.whereArgs,
+                null, null, null, null);
 
         try {
-            List<V> objects = castQuery(db, select, objectType, queryListener);
-            Progress.addToTotal(progressListener, objects.size());
+            while (cursor.moveToNext()) {
+                bestRows.add(new ScoredRow(cursor.getLong(0), match.getScore(cursor.getBlob(1))));
 
-            for (V object : objects) {
-                if (!Progress.call(progressListener, 1))
-                    break;
+                if (bestRows.size() > limit)
+                    bestRows.poll();
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ScoredRow[] rankedRows = new ScoredRow[bestRows.size()];
+        final Map<Long, Integer> positions = new HashMap<>();
+        List<Long> docIds = new ArrayList<>(rankedRows.length);
+
+        for (int i = rankedRows.length - 1; i >= 0; i--)
+            rankedRows[i] = bestRows.poll();
+
+        rankedRows = Arrays.copyOfRange(rankedRows, Math.min(offset, rankedRows.length), rankedRows.length);
+        final Object[] objects = new Object[rankedRows.length];
+
+        for (int i = 0; i < rankedRows.length; i++) {
+            docIds.add(rankedRows[i].docId);
+            positions.put(rankedRows[i].docId, i);
+        }
+
+        CastQueryListener<V> orderListener = new CastQueryListener<V>()
+        {
+            @Override
+            public void onObjectReconstructed(KuickDb manager, ContentValues item, V object)
+            {
+                Long docId = item.getAsLong(SQLQuery.Match.FIELD_DOCID);
+                Integer position = docId == null ? null : positions.get(docId);
+
+                // The docid is projected by the content select, but a load listener or the object may change the row.
+                if (position == null) {
+                    Log.w(TAG, "Skipped a row whose docid is missing or was not ranked; " + item);
+                    return;
+                }
+
+                objects[position] = object;
+
+                if (listener != null)
+                    listener.onObjectReconstructed(manager, item, object);
+            }
+        };
+
+        int argCount = 1 + (match.whereArgs == null ? 0 : match.whereArgs.length);
+        int chunkSize = Math.max(1, MAX_VARIABLE_NUMBER - argCount);
+
+        for (int start = 0; start < docIds.size(); start += chunkSize)
+            castQuery(db, match.createContentSelect(docIds.subList(start, Math.min(docIds.size(),
+                    start + chunkSize))), clazz, orderListener);
 
-                remove(db, object, parent, progressListener);
+        List<V> returnedList = new ArrayList<>(objects.length);
+
+        // The rows that were removed since they were ranked leave a gap.
+        for (Object object : objects)
+            if (object != null) {
+                @SuppressWarnings("unchecked")
+                V typedObject = (V) object;
+                returnedList.add(typedObject);
             }
 
+        trace(KuickDbMetrics.OPERATION_SEARCH, match.tableName, match, startTime, returnedList.size(), 0);
+        return returnedList;
+    }
+
+    /**
+     * Reads a limit clause in any of the forms SQLite accepts: {@code count}, {@code count OFFSET offset} or
+     * {@code offset, count}. A negative count means no limit.
+     *
+     * @return the row count and the offset
+     */
+    private static int[] parseLimit(String limit)
+    {
+        if (limit == null || limit.trim().length() == 0)
+            return new int[]{Integer.MAX_VALUE, 0};
+
+        Matcher matcher = LIMIT_CLAUSE.matcher(limit);
+
+        if (!matcher.matches())
+            throw new IllegalArgumentException("A ranked query can only be limited by a row count and an offset: "
+                    + limit);
+
+        String count = matcher.group(1) != null ? matcher.group(1) : matcher.group(4);
+        String offset = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+
+        try {
+            int countValue = Integer.parseInt(count);
+            return new int[]{countValue < 0 ? Integer.MAX_VALUE : countValue,
+                    offset == null ? 0 : Math.max(0, Integer.parseInt(offset))};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The limit of a ranked query is out of range: " + limit);
+        }
+    }
+
+    /**
+     * Keeps the values of a {@link TrackedDatabaseObject} as they are in the database at this point.
+     */
+    void snapshot(BaseDatabaseObject object)
+    {
+        if (object instanceof TrackedDatabaseObject)
+            ((TrackedDatabaseObject<?>) object).setSnapshot(object.getValues());
+    }
+
+    /**
+     * Applies the schema to the database unless its fingerprint matches the one applied last time, in which case no
+     * DDL is run at all. Otherwise, the missing tables, columns and indexes are created in a single transaction
+     * with {@link SQLQuery#upgradeTables(SQLiteDatabase, SQLValues)} and the new fingerprint is stored. This is called
+     * when the database is opened if a schema has been set with {@link #setSchema(SQLValues)}.
+     *
+     * @return true if the database was changed
+     */
+    public boolean syncSchema(SQLiteDatabase db, SQLValues schema)
+    {
+        String fingerprint = schema.getFingerprint();
+
+        if (fingerprint.equals(readSchemaFingerprint(db)))
+            return false;
+
+        db.beginTransaction();
+
+        try {
+            SQLQuery.upgradeTables(db, schema);
+            db.execSQL("CREATE TABLE IF NOT EXISTS `" + TABLE_SCHEMA + "` (`fingerprint` text not null)");
+            db.execSQL("DELETE FROM `" + TABLE_SCHEMA + "`");
+            db.execSQL("INSERT INTO `" + TABLE_SCHEMA + "` (`fingerprint`) VALUES (?)", new Object[]{fingerprint});
             db.setTransactionSuccessful();
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
         } finally {
             db.endTransaction();
         }
 
-        return false;
+        return true;
+    }
+
+    /**
+     * Inserts the row or updates the existing one that has the same values for the conflict keys with a single
+     * statement. Needs SQLite 3.24 and a PRIMARY KEY or UNIQUE constraint or a unique index on the conflict keys.
+     *
+     * @return the number of rows written
+     */
+    public int upsert(SQLiteDatabase db, String tableName, String[] conflictKeys, ContentValues values)
+    {
+        return executeUpsert(db, tableName, conflictKeys, getSortedColumns(values), null, values);
+    }
+
+    public <V> int upsert(SQLiteDatabase db, String tableName, String[] conflictKeys, V object, RowMapper<V> mapper)
+    {
+        return executeUpsert(db, tableName, conflictKeys, mapper.getColumns(), mapper, object);
+    }
+
+    /**
+     * Tells whether a row with the conflict key values exists. The values are bound with their types so that they
+     * compare the way the unique index does, and a missing or null key never conflicts.
+     */
+    private boolean hasConflictingRow(SQLiteDatabase db, String tableName, String[] conflictKeys,
+                                      ContentValues values)
+    {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM ")
+                .append(tableName)
+                .append(" WHERE ");
+
+        for (int i = 0; i < conflictKeys.length; i++) {
+            if (values.get(conflictKeys[i]) == null)
+                return false;
+
+            if (i > 0)
+                sql.append(" AND ");
+
+            sql.append(conflictKeys[i])
+                    .append(" = ?");
+        }
+
+        SQLiteStatement statement = db.compileStatement(sql.toString());
+
+        try {
+            for (int i = 0; i < conflictKeys.length; i++)
+                bindContentValue(statement, i + 1, values.get(conflictKeys[i]));
+
+            return statement.simpleQueryForLong() > 0;
+        } finally {
+            statement.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int executeUpsert(SQLiteDatabase db, String tableName, String[] conflictKeys, String[] columns,
+                              RowMapper<?> mapper, Object row)
+    {
+        List<String> columnList = Arrays.asList(columns);
+
+        for (String conflictKey : conflictKeys)
+            if (!columnList.contains(conflictKey))
+                throw new IllegalArgumentException("Conflict key " + conflictKey + " of table " + tableName
+                        + " is not among the written columns");
+
+        StatementCache.Key key = StatementCache.Key.forUpsert(tableName, columns, conflictKeys);
+        StatementCache cache = getStatementCache(db);
+        int rowsChanged;
+
+        synchronized (cache) {
+            SQLiteStatement statement = mStatementCacheCapacity > 0 ? cache.acquire(key)
+                    : db.compileStatement(key.toSql());
+
+            try {
+                if (mapper == null)
+                    bindContentValues(statement, 1, columns, (ContentValues) row);
+                else
+                    ((RowMapper<Object>) mapper).bind(statement, 1, row);
+
+                rowsChanged = statement.executeInsert() > -1 ? 1 : 0;
+            } catch (SQLException e) {
+                Log.e(TAG, "Error upserting into " + tableName, e);
+                rowsChanged = 0;
+            } finally {
+                releaseStatement(statement);
+            }
+        }
+
+        append(db, tableName, TYPE_UPSERT, rowsChanged);
+        return rowsChanged;
+    }
+
+    private void trace(String operation, String tableName, SQLQuery.Select select, long startTime, long rows,
+                       long bytes)
+    {
+        KuickDbMetrics metrics = mMetrics;
+
+        if (metrics != null)
+            metrics.onOperation(this, operation, tableName, select, System.nanoTime() - startTime, rows, bytes);
+    }
+
+    private void traceTransaction(boolean committed)
+    {
+        long startTime = mTransactionStartTimes.get().pop();
+        KuickDbMetrics metrics = mMetrics;
+
+        if (metrics != null)
+            metrics.onTransaction(this, committed, System.nanoTime() - startTime);
+    }
+
+    private String[] getUpsertConflictKeys(String tableName)
+    {
+        // INSERT ... ON CONFLICT DO UPDATE is available since SQLite 3.24 which ships with Android 11.
+        if (mSchema == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.R)
+            return null;
+
+        SQLValues.Table table = mSchema.getTable(tableName);
+
+        if (table == null || table.getConflictKeys() == null || table.getConflictKeys().length == 0)
+            return null;
+
+        return table.getConflictKeys();
     }
 
     public <T, V extends DatabaseObject<T>> int update(V object)
@@ -457,7 +2173,57 @@ public abstract class KuickDb extends SQLiteOpenHelper
                                                        Progress.Listener listener)
     {
         object.onUpdateObject(db, this, parent, listener);
-        return update(db, object.getWhere(), object.getValues());
+
+        ContentValues snapshot = getSnapshot(object);
+
+        if (snapshot != null) {
+            ContentValues values = object.getValues();
+            ContentValues changes = getChangedValues(snapshot, values);
+
+            // The row is known to be there, so an unchanged object counts as updated without being written.
+            if (changes.size() == 0)
+                return 1;
+
+            int rowsAffected = update(db, object.getWhere(), changes);
+
+            if (rowsAffected > 0)
+                ((TrackedDatabaseObject<?>) object).setSnapshot(values);
+
+            return rowsAffected;
+        }
+
+        RowMapper<V> mapper = getRowMapper(object);
+        int rowsAffected = mapper == null ? update(db, object.getWhere(), object.getValues())
+                : update(db, object.getWhere(), object, mapper);
+
+        if (rowsAffected > 0)
+            snapshot(object);
+
+        return rowsAffected;
+    }
+
+    public <V> int update(SQLiteDatabase db, SQLQuery.Select select, V object, RowMapper<V> mapper)
+    {
+        long startTime = System.nanoTime();
+        StatementCache.Key key = StatementCache.Key.forUpdate(select.tableName, mapper.getColumns(), select.where);
+        StatementCache cache = getStatementCache(db);
+        int rowsAffected;
+
+        synchronized (cache) {
+            SQLiteStatement statement = mStatementCacheCapacity > 0 ? cache.acquire(key)
+                    : db.compileStatement(key.toSql());
+
+            try {
+                bindWhereArgs(statement, mapper.bind(statement, 1, object), select.whereArgs);
+                rowsAffected = statement.executeUpdateDelete();
+            } finally {
+                releaseStatement(statement);
+            }
+        }
+
+        append(db, select.tableName, TYPE_UPDATE, rowsAffected);
+        trace(KuickDbMetrics.OPERATION_UPDATE, select.tableName, select, startTime, rowsAffected, 0);
+        return rowsAffected;
     }
 
     public int update(SQLQuery.Select select, ContentValues values)
@@ -467,11 +2233,112 @@ public abstract class KuickDb extends SQLiteOpenHelper
 
     public int update(SQLiteDatabase database, SQLQuery.Select select, ContentValues values)
     {
-        int rowsAffected = database.update(select.tableName, values, select.where, select.whereArgs);
+        long startTime = System.nanoTime();
+        int rowsAffected = executeUpdate(database, select, values);
         append(database, select.tableName, TYPE_UPDATE, rowsAffected);
+        trace(KuickDbMetrics.OPERATION_UPDATE, select.tableName, select, startTime, rowsAffected, 0);
         return rowsAffected;
     }
 
+    private int executeUpdate(SQLiteDatabase db, SQLQuery.Select select, ContentValues values)
+    {
+        if (mStatementCacheCapacity <= 0 || values == null || values.size() == 0)
+            return db.update(select.tableName, values, select.where, select.whereArgs);
+
+        String[] columns = getSortedColumns(values);
+        StatementCache cache = getStatementCache(db);
+
+        synchronized (cache) {
+            SQLiteStatement statement = cache.acquire(StatementCache.Key.forUpdate(select.tableName, columns,
+                    select.where));
+
+            try {
+                bindWhereArgs(statement, bindContentValues(statement, 1, columns, values), select.whereArgs);
+                return statement.executeUpdateDelete();
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    /**
+     * Changes are sent as {@link #ACTION_DATABASE_CHANGE} intents by default. In-process listeners should subscribe
+     * to {@link #getChangeNotifier()} instead and this can be disabled to avoid the cost of the broadcasts.
+     */
+    public synchronized void setIntentBroadcastEnabled(boolean enabled)
+    {
+        if (enabled && mIntentSubscription == null)
+            mIntentSubscription = mChangeNotifier.subscribe(new IntentBroadcastAdapter(getContext()));
+        else if (!enabled && mIntentSubscription != null) {
+            mIntentSubscription.unsubscribe();
+            mIntentSubscription = null;
+        }
+    }
+
+    /**
+     * Enables caching the rows that {@link #reconstruct(SQLiteDatabase, DatabaseObject)} reads when the capacity is
+     * greater than zero. Cached rows are served until a change is recorded for their table.
+     */
+    public void setObjectCacheCapacity(int capacity)
+    {
+        mObjectCache.setCapacity(capacity);
+    }
+
+    /**
+     * Enables caching the results of {@link #getTable(SQLiteDatabase, SQLQuery.Select)} and
+     * {@link #castQuery(SQLiteDatabase, SQLQuery.Select, ObjectFactory, CastQueryListener)} when both limits are
+     * greater than zero. A result is served until a change is recorded for its table or for any of
+     * {@link SQLQuery.Select#dependencies}.
+     */
+    public void setQueryCacheCapacity(int maxEntries, long maxBytes)
+    {
+        mQueryCache.setCapacity(maxEntries, maxBytes);
+    }
+
+    /**
+     * When enabled, {@link #insert(SQLiteDatabase, List, Object, Progress.Listener)} groups consecutive objects that
+     * share a table and a column set into multi-row INSERT statements. Every object still receives
+     * {@link DatabaseObject#onCreateObject}, but its row is written together with the rest of its chunk. The hook of
+     * an object therefore runs before the rows of the objects ahead of it in the same chunk are written, so it should
+     * be left disabled for the objects whose hooks read those rows or insert rows that refer to them.
+     */
+    public void setInsertBatching(boolean insertBatching)
+    {
+        mInsertBatching = insertBatching;
+    }
+
+    /**
+     * @param metrics to report the cost of the operations to, or null to stop reporting
+     */
+    public void setMetrics(KuickDbMetrics metrics)
+    {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Makes the schema known to this instance so that the declarations in it, such as the conflict keys of the tables,
+     * can be used when writing. It is also applied to the database with {@link #syncSchema(SQLiteDatabase, SQLValues)}
+     * each time the database is opened, so it should be set before the database is first requested.
+     */
+    public void setSchema(SQLValues schema)
+    {
+        mSchema = schema;
+    }
+
+    /**
+     * Sets how many compiled statements are kept for each database connection. Zero or less disables the cache and
+     * every write is sent through {@link SQLiteDatabase} as it is.
+     */
+    public void setStatementCacheCapacity(int capacity)
+    {
+        synchronized (mStatementCaches) {
+            mStatementCacheCapacity = capacity;
+
+            for (StatementCache cache : mStatementCaches.values())
+                cache.setCapacity(capacity);
+        }
+    }
+
     public <T, V extends DatabaseObject<T>> boolean update(List<V> objects)
     {
         return update(getWritableDatabase(), objects, null, null);
@@ -480,9 +2347,10 @@ public abstract class KuickDb extends SQLiteOpenHelper
     public <T, V extends DatabaseObject<T>> boolean update(SQLiteDatabase db, List<V> objects, T parent,
                                                            Progress.Listener listener)
     {
-        db.beginTransaction();
+        beginTransaction(db);
 
         try {
+            Progress.begin(listener);
             Progress.addToTotal(listener, objects.size());
 
             for (V object : objects) {
@@ -497,7 +2365,7 @@ public abstract class KuickDb extends SQLiteOpenHelper
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            db.endTransaction();
+            endTransaction(db);
         }
 
         return false;
@@ -513,6 +2381,68 @@ public abstract class KuickDb extends SQLiteOpenHelper
         return (BroadcastData) intent.getSerializableExtra(EXTRA_BROADCAST_DATA);
     }
 
+    private static class ScoredRow implements Comparable<ScoredRow>
+    {
+        final long docId;
+        final double score;
+
+        ScoredRow(long docId, double score)
+        {
+            this.docId = docId;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(ScoredRow other)
+        {
+            int result = Double.compare(score, other.score);
+
+            // Among the rows with the same score, the older ones come first.
+            if (result == 0 && docId != other.docId)
+                result = docId < other.docId ? 1 : -1;
+
+            return result;
+        }
+    }
+
+    /**
+     * Binds the where arguments again with their types, as the queries of {@link SQLiteDatabase} bind them as strings.
+     */
+    private static class TypedArgsCursorFactory implements SQLiteDatabase.CursorFactory
+    {
+        final Object[] args;
+
+        TypedArgsCursorFactory(Object[] args)
+        {
+            this.args = args;
+        }
+
+        @Override
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable,
+                                SQLiteQuery query)
+        {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] instanceof Double)
+                    query.bindDouble(i + 1, (Double) args[i]);
+                else if (args[i] instanceof Long)
+                    query.bindLong(i + 1, (Long) args[i]);
+            }
+
+            return new SQLiteCursor(masterQuery, editTable, query);
+        }
+    }
+
+    private static class DeferredChanges
+    {
+        final SQLiteDatabase db;
+        final Map<String, BroadcastData> changes = new HashMap<>();
+
+        DeferredChanges(SQLiteDatabase db)
+        {
+            this.db = db;
+        }
+    }
+
     public static class BroadcastData implements Serializable
     {
         public int affectedRowCount = 0;
@@ -525,5 +2455,40 @@ public abstract class KuickDb extends SQLiteOpenHelper
         {
             this.tableName = tableName;
         }
+
+        BroadcastData(BroadcastData data)
+        {
+            this(data.tableName);
+            merge(data);
+        }
+
+        void record(String changeType, long affectedRows)
+        {
+            switch (changeType) {
+                case TYPE_INSERT:
+                    inserted = true;
+                    break;
+                case TYPE_REMOVE:
+                    removed = true;
+                    break;
+                case TYPE_UPDATE:
+                    updated = true;
+                    break;
+                case TYPE_UPSERT:
+                    // Whether the row was created or changed is not reported by SQLite.
+                    inserted = true;
+                    updated = true;
+            }
+
+            affectedRowCount += affectedRows;
+        }
+
+        void merge(BroadcastData data)
+        {
+            affectedRowCount += data.affectedRowCount;
+            inserted |= data.inserted;
+            removed |= data.removed;
+            updated |= data.updated;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.genonbeta.android.database;
+
+/**
+ * Receives the cost of the operations a {@link KuickDb} runs once it is set with
+ * {@link KuickDb#setMetrics(KuickDbMetrics)}. The calls are made on the thread that ran the operation, so they should
+ * return quickly. Operations may nest, e.g., the time of a {@link #OPERATION_PUBLISH} includes the
+ * {@link #OPERATION_UPDATE} and {@link #OPERATION_INSERT} it runs, and each of them is reported on its own.
+ */
+public interface KuickDbMetrics
+{
+    String OPERATION_GET_TABLE = "getTable",
+            OPERATION_CAST_QUERY = "castQuery",
+            OPERATION_RECONSTRUCT = "reconstruct",
+            OPERATION_INSERT = "insert",
+            OPERATION_UPDATE = "update",
+            OPERATION_REMOVE = "remove",
+            OPERATION_PUBLISH = "publish",
+            OPERATION_SEARCH = "search",
+            OPERATION_TRANSACTION = "transaction";
+
+    /**
+     * @param operation     one of the OPERATION_ constants
+     * @param select        the query the operation ran with, or null if it did not run one, e.g., for inserts
+     * @param durationNanos the time the operation took
+     * @param rows          the rows that were read or affected
+     * @param bytes         the estimated size of the rows that were loaded into memory, or zero if the operation
+     *                      does not keep the rows
+     */
+    void onOperation(KuickDb kuick, String operation, String tableName, SQLQuery.Select select, long durationNanos,
+                     long rows, long bytes);
+
+    /**
+     * Called when a transaction started with {@link KuickDb#beginTransaction} ends.
+     *
+     * @param committed false if the transaction was rolled back
+     */
+    void onTransaction(KuickDb kuick, boolean committed, long durationNanos);
+}
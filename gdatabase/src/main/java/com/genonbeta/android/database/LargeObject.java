@@ -0,0 +1,313 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The contents of a large object column kept out of its row, in chunks of {@link #CHUNK_SIZE} bytes. The column
+ * only holds the id of the object, so the rows it belongs to can be read without loading the contents, which are
+ * read and written through this handle a chunk at a time instead. An object is removed together with its row, or
+ * when the column is changed to refer to another one, by the triggers that {@link SQLQuery#createTables} creates for
+ * the columns declared with {@link SQLValues.Column#setLargeObject(boolean)}. The objects that are created but never
+ * stored in a column should be removed with {@link #remove()}.
+ * <p>
+ * Each chunk is written with a statement of its own, so a transaction should be used when the other threads should
+ * not see an object that is half written.
+ */
+public class LargeObject
+{
+    public static final String TABLE_NAME = "kuick_large_object",
+            TABLE_CHUNKS = "kuick_large_object_chunk",
+            FIELD_ID = "id",
+            FIELD_LENGTH = "length",
+            FIELD_OBJECT = "object",
+            FIELD_CHUNK = "chunk",
+            FIELD_DATA = "data";
+
+    /**
+     * Kept well below the 2 MB cursor window so that a chunk is always read as a single row.
+     */
+    public static final int CHUNK_SIZE = 256 * 1024;
+
+    private final SQLiteDatabase mDatabase;
+    private final long mId;
+
+    public LargeObject(SQLiteDatabase db, long id)
+    {
+        mDatabase = db;
+        mId = id;
+    }
+
+    /**
+     * Creates an empty object whose id can be stored in a large object column.
+     */
+    public static LargeObject create(SQLiteDatabase db)
+    {
+        ContentValues values = new ContentValues();
+        values.put(FIELD_LENGTH, 0);
+
+        long id = db.insert(TABLE_NAME, null, values);
+
+        if (id == -1)
+            throw new IllegalStateException("Could not create a large object, the tables may not have been created");
+
+        return new LargeObject(db, id);
+    }
+
+    public long getId()
+    {
+        return mId;
+    }
+
+    /**
+     * @return the size of the contents in bytes
+     */
+    public long getLength()
+    {
+        Cursor cursor = mDatabase.query(TABLE_NAME, new String[]{FIELD_LENGTH}, "`" + FIELD_ID + "` = ?",
+                new String[]{String.valueOf(mId)}, null, null, null, null);
+
+        try {
+            if (!cursor.moveToFirst())
+                throw new IllegalStateException("There is no large object with id " + mId);
+
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public InputStream openInputStream()
+    {
+        return new ChunkInputStream(getLength());
+    }
+
+    /**
+     * Replaces the contents with what is written to the stream. The length is updated and the chunks that are left
+     * from the old contents are removed when the stream is closed, unless a write failed, in which case the
+     * transaction it was written in should be rolled back.
+     */
+    public OutputStream openOutputStream()
+    {
+        getLength();
+        return new ChunkOutputStream();
+    }
+
+    /**
+     * Reads a part of the contents, loading only the chunks that hold it.
+     *
+     * @return the bytes that were read, fewer than requested if the contents end before
+     */
+    public ByteBuffer read(long offset, int length) throws IOException
+    {
+        InputStream inputStream = new ChunkInputStream(getLength());
+        byte[] bytes = new byte[length];
+        int count = 0;
+
+        try {
+            if (inputStream.skip(offset) == offset)
+                while (count < length) {
+                    int read = inputStream.read(bytes, count, length - count);
+
+                    if (read == -1)
+                        break;
+
+                    count += read;
+                }
+        } finally {
+            inputStream.close();
+        }
+
+        return ByteBuffer.wrap(bytes, 0, count).slice();
+    }
+
+    private byte[] readChunk(int index) throws IOException
+    {
+        Cursor cursor = mDatabase.query(TABLE_CHUNKS, new String[]{FIELD_DATA}, "`" + FIELD_OBJECT + "` = ? AND `"
+                + FIELD_CHUNK + "` = ?", new String[]{String.valueOf(mId), String.valueOf(index)}, null, null, null,
+                null);
+
+        try {
+            if (!cursor.moveToFirst())
+                throw new IOException("Chunk " + index + " of large object " + mId + " is missing");
+
+            return cursor.getBlob(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Removes the object together with its contents.
+     */
+    public void remove()
+    {
+        String[] args = new String[]{String.valueOf(mId)};
+
+        mDatabase.delete(TABLE_CHUNKS, "`" + FIELD_OBJECT + "` = ?", args);
+        mDatabase.delete(TABLE_NAME, "`" + FIELD_ID + "` = ?", args);
+    }
+
+    private class ChunkInputStream extends InputStream
+    {
+        private final long mLength;
+        private long mPosition;
+        private int mChunkIndex = -1;
+        private byte[] mChunk;
+
+        ChunkInputStream(long length)
+        {
+            mLength = length;
+        }
+
+        @Override
+        public int available()
+        {
+            if (mChunk == null || mPosition >= mLength || mPosition / CHUNK_SIZE != mChunkIndex)
+                return 0;
+
+            return mChunk.length - (int) (mPosition % CHUNK_SIZE);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] buffer = new byte[1];
+            return read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException
+        {
+            if (length == 0)
+                return 0;
+
+            if (mPosition >= mLength)
+                return -1;
+
+            int index = (int) (mPosition / CHUNK_SIZE);
+
+            if (index != mChunkIndex) {
+                mChunk = readChunk(index);
+                mChunkIndex = index;
+            }
+
+            int chunkOffset = (int) (mPosition % CHUNK_SIZE);
+            int count = Math.min(length, mChunk.length - chunkOffset);
+
+            if (count <= 0)
+                throw new IOException("Chunk " + index + " of large object " + mId + " is shorter than expected");
+
+            System.arraycopy(mChunk, chunkOffset, buffer, offset, count);
+            mPosition += count;
+
+            return count;
+        }
+
+        @Override
+        public long skip(long count)
+        {
+            long skipped = Math.max(0, Math.min(count, mLength - mPosition));
+            mPosition += skipped;
+            return skipped;
+        }
+    }
+
+    private class ChunkOutputStream extends OutputStream
+    {
+        private final byte[] mBuffer = new byte[CHUNK_SIZE];
+        private final SQLiteStatement mStatement;
+        private int mCount;
+        private int mChunkIndex;
+        private long mLength;
+        private boolean mClosed;
+        private boolean mFailed;
+
+        ChunkOutputStream()
+        {
+            mStatement = mDatabase.compileStatement("INSERT OR REPLACE INTO `" + TABLE_CHUNKS + "` (`" + FIELD_OBJECT
+                    + "`, `" + FIELD_CHUNK + "`, `" + FIELD_DATA + "`) VALUES (?, ?, ?)");
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (mClosed)
+                return;
+
+            mClosed = true;
+
+            try {
+                // Recording the length would make the part that was written before the failure look complete.
+                if (mFailed)
+                    return;
+
+                if (mCount > 0)
+                    writeChunk();
+
+                ContentValues values = new ContentValues();
+                values.put(FIELD_LENGTH, mLength);
+
+                mDatabase.delete(TABLE_CHUNKS, "`" + FIELD_OBJECT + "` = ? AND `" + FIELD_CHUNK + "` >= ?",
+                        new String[]{String.valueOf(mId), String.valueOf(mChunkIndex)});
+                mDatabase.update(TABLE_NAME, values, "`" + FIELD_ID + "` = ?", new String[]{String.valueOf(mId)});
+            } finally {
+                mStatement.close();
+            }
+        }
+
+        @Override
+        public void write(int oneByte) throws IOException
+        {
+            write(new byte[]{(byte) oneByte}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException
+        {
+            if (mClosed)
+                throw new IOException("The stream of large object " + mId + " is closed");
+
+            if (mFailed)
+                throw new IOException("An earlier write to large object " + mId + " failed");
+
+            while (length > 0) {
+                int count = Math.min(length, CHUNK_SIZE - mCount);
+
+                System.arraycopy(buffer, offset, mBuffer, mCount, count);
+                mCount += count;
+                offset += count;
+                length -= count;
+
+                if (mCount == CHUNK_SIZE)
+                    writeChunk();
+            }
+        }
+
+        private void writeChunk() throws IOException
+        {
+            try {
+                mStatement.bindLong(1, mId);
+                mStatement.bindLong(2, mChunkIndex);
+                mStatement.bindBlob(3, mCount == CHUNK_SIZE ? mBuffer : Arrays.copyOf(mBuffer, mCount));
+                mStatement.executeInsert();
+                mStatement.clearBindings();
+            } catch (RuntimeException e) {
+                mFailed = true;
+                throw new IOException("Could not write chunk " + mChunkIndex + " of large object " + mId, e);
+            }
+
+            mLength += mCount;
+            mCount = 0;
+            mChunkIndex++;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.genonbeta.android.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts values, such as durations in nanoseconds, in buckets whose width grows with the value so that the
+ * percentiles it reports are within 12.5% of the real ones. Recording is lock-free and can be done from any number
+ * of threads at the same time.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    private static int getBucket(long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long getBucketUpperBound(int bucket)
+    {
+        if (bucket < SUB_BUCKET_COUNT)
+            return bucket;
+
+        int shift = bucket / SUB_BUCKET_COUNT - 1;
+        long lowerBound = (long) (SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT) << shift;
+
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    public long getCount()
+    {
+        return mCount.get();
+    }
+
+    public long getMax()
+    {
+        return mMax.get();
+    }
+
+    public double getMean()
+    {
+        long count = mCount.get();
+        return count == 0 ? 0 : (double) mSum.get() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value below which the given percent of the recorded values fall
+     */
+    public long getPercentile(double percentile)
+    {
+        long count = mCount.get();
+
+        if (count == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+
+            if (seen >= target)
+                return Math.min(getBucketUpperBound(i), mMax.get());
+        }
+
+        return mMax.get();
+    }
+
+    public long getSum()
+    {
+        return mSum.get();
+    }
+
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+
+        mCounts.incrementAndGet(getBucket(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+
+        long max;
+
+        while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+            // Retry until the highest value is recorded.
+        }
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            mCounts.set(i, 0);
+
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+}
@@ -0,0 +1,173 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the rows loaded by {@link KuickDb#reconstruct(android.database.sqlite.SQLiteDatabase, DatabaseObject)} in
+ * least-recently-used order, keyed by the query that {@link BaseDatabaseObject#getWhere()} returns. Each row is stored
+ * with the version its table had before it was read and is only served while that version is current, so a change
+ * recorded by {@link KuickDb#append} invalidates every row of the table at once.
+ */
+public class ObjectCache
+{
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private int mCapacity;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    public ObjectCache(int capacity)
+    {
+        mCapacity = capacity;
+    }
+
+    public synchronized void clear()
+    {
+        mEntries.clear();
+    }
+
+    /**
+     * @return a copy of the cached row, or null if there is none for the given table version
+     */
+    public synchronized ContentValues get(SQLQuery.Select select, long tableVersion)
+    {
+        Key key = new Key(select);
+        Entry entry = mEntries.get(key);
+
+        if (entry == null || entry.tableVersion != tableVersion) {
+            if (entry != null)
+                mEntries.remove(key);
+
+            mMissCount++;
+            return null;
+        }
+
+        mHitCount++;
+        return new ContentValues(entry.item);
+    }
+
+    public int getCapacity()
+    {
+        return mCapacity;
+    }
+
+    public synchronized long getEvictionCount()
+    {
+        return mEvictionCount;
+    }
+
+    public synchronized long getHitCount()
+    {
+        return mHitCount;
+    }
+
+    public synchronized double getHitRatio()
+    {
+        long total = mHitCount + mMissCount;
+        return total == 0 ? 0 : (double) mHitCount / total;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return mMissCount;
+    }
+
+    public synchronized int getSize()
+    {
+        return mEntries.size();
+    }
+
+    public boolean isEnabled()
+    {
+        return mCapacity > 0;
+    }
+
+    public synchronized void put(SQLQuery.Select select, long tableVersion, ContentValues item)
+    {
+        if (mCapacity <= 0)
+            return;
+
+        mEntries.put(new Key(select), new Entry(tableVersion, new ContentValues(item)));
+        trimToCapacity();
+    }
+
+    public synchronized void setCapacity(int capacity)
+    {
+        mCapacity = capacity;
+        trimToCapacity();
+    }
+
+    private void trimToCapacity()
+    {
+        Iterator<Map.Entry<Key, Entry>> iterator = mEntries.entrySet().iterator();
+
+        while (mEntries.size() > Math.max(mCapacity, 0) && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    private static class Entry
+    {
+        final long tableVersion;
+        final ContentValues item;
+
+        Entry(long tableVersion, ContentValues item)
+        {
+            this.tableVersion = tableVersion;
+            this.item = item;
+        }
+    }
+
+    private static class Key
+    {
+        final String tableName;
+        final String[] columns;
+        final String where;
+        final String[] whereArgs;
+        final int hashCode;
+
+        Key(SQLQuery.Select select)
+        {
+            // The arrays are copied as the caller may still change them.
+            tableName = select.tableName;
+            columns = select.columns == null ? null : select.columns.clone();
+            where = select.where;
+            whereArgs = select.whereArgs == null ? null : select.whereArgs.clone();
+
+            int hashCode = tableName.hashCode();
+            hashCode = 31 * hashCode + Arrays.hashCode(columns);
+            hashCode = 31 * hashCode + (where == null ? 0 : where.hashCode());
+            hashCode = 31 * hashCode + Arrays.hashCode(whereArgs);
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+
+            return hashCode == other.hashCode && tableName.equals(other.tableName)
+                    && Arrays.equals(columns, other.columns) && Arrays.equals(whereArgs, other.whereArgs)
+                    && (where == null ? other.where == null : where.equals(other.where));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Reconstructs {@link DatabaseObject}s one row at a time from a {@link TableCursor}, so that only the object being
+ * read is held in memory next to the row buffer.
+ */
+public class ObjectCursor<V extends DatabaseObject<?>> implements Iterator<V>, Iterable<V>, Closeable
+{
+    private final SQLiteDatabase mDatabase;
+    private final KuickDb mKuick;
+    private final TableCursor mTableCursor;
+    private final ObjectFactory<V> mFactory;
+    private final KuickDb.CastQueryListener<V> mListener;
+
+    public ObjectCursor(SQLiteDatabase db, KuickDb kuick, TableCursor tableCursor, ObjectFactory<V> factory,
+                        KuickDb.CastQueryListener<V> listener)
+    {
+        mDatabase = db;
+        mKuick = kuick;
+        mTableCursor = tableCursor;
+        mFactory = factory;
+        mListener = listener;
+    }
+
+    @Override
+    public void close()
+    {
+        mTableCursor.close();
+    }
+
+    public TableCursor getTableCursor()
+    {
+        return mTableCursor;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return mTableCursor.hasNext();
+    }
+
+    @Override
+    public Iterator<V> iterator()
+    {
+        return this;
+    }
+
+    @Override
+    public V next()
+    {
+        ContentValues item = mTableCursor.next();
+        V object = mFactory.create();
+
+        object.reconstruct(mDatabase, mKuick, item);
+        mKuick.snapshot(object);
+
+        if (mListener != null)
+            mListener.onObjectReconstructed(mKuick, item, object);
+
+        return object;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("Objects cannot be removed through a cursor");
+    }
+}
@@ -0,0 +1,96 @@
+package com.genonbeta.android.database;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds the {@link ObjectFactory} of a class for the methods that are still given a {@link Class}. The factories
+ * registered here and the ones generated for {@link com.genonbeta.android.database.annotation.GenerateFactory} are
+ * preferred; other classes are created through reflection. A generated factory is found by a name derived from the
+ * name of its class, which the consumer ProGuard rules of the library keep for the annotated classes.
+ */
+public class ObjectFactories
+{
+    public static final String GENERATED_SUFFIX = "_ObjectFactory";
+
+    private static final Map<Class<?>, ObjectFactory<?>> FACTORIES = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public static <V> ObjectFactory<V> get(Class<V> clazz)
+    {
+        synchronized (FACTORIES) {
+            ObjectFactory<V> factory = (ObjectFactory<V>) FACTORIES.get(clazz);
+
+            if (factory == null) {
+                factory = loadGenerated(clazz);
+
+                if (factory == null)
+                    factory = new ReflectiveFactory<>(clazz);
+
+                FACTORIES.put(clazz, factory);
+            }
+
+            return factory;
+        }
+    }
+
+    public static String getGeneratedName(Class<?> clazz)
+    {
+        String name = clazz.getName();
+        int packageEnd = name.lastIndexOf('.') + 1;
+
+        return name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_') + GENERATED_SUFFIX;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> ObjectFactory<V> loadGenerated(Class<V> clazz)
+    {
+        try {
+            return (ObjectFactory<V>) Class.forName(getGeneratedName(clazz), true, clazz.getClassLoader())
+                    .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Could not create the generated factory of " + clazz.getName(),
+                    e.getCause());
+        } catch (InstantiationException | IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("Could not create the generated factory of " + clazz.getName(), e);
+        }
+    }
+
+    public static <V> void register(Class<V> clazz, ObjectFactory<V> factory)
+    {
+        synchronized (FACTORIES) {
+            FACTORIES.put(clazz, factory);
+        }
+    }
+
+    public static class ReflectiveFactory<V> implements ObjectFactory<V>
+    {
+        private final Class<V> mClazz;
+        private Constructor<V> mConstructor;
+
+        public ReflectiveFactory(Class<V> clazz)
+        {
+            mClazz = clazz;
+        }
+
+        @Override
+        public V create()
+        {
+            try {
+                // Looked up once, as each lookup copies the constructor.
+                if (mConstructor == null)
+                    mConstructor = mClazz.getDeclaredConstructor();
+
+                return mConstructor.newInstance();
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Could not create an instance of " + mClazz.getName(), e.getCause());
+            } catch (InstantiationException | IllegalAccessException | NoSuchMethodException e) {
+                throw new IllegalStateException("Could not create an instance of " + mClazz.getName(), e);
+            }
+        }
+    }
+}
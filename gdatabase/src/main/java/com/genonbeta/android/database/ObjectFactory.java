@@ -0,0 +1,10 @@
+package com.genonbeta.android.database;
+
+/**
+ * Creates the empty objects that the queries reconstruct. Implementations are generated for the classes annotated
+ * with {@link com.genonbeta.android.database.annotation.GenerateFactory}, or can be written by hand.
+ */
+public interface ObjectFactory<V>
+{
+    V create();
+}
@@ -0,0 +1,105 @@
+package com.genonbeta.android.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of a keyset paginated query. The continuation token holds the seek key of the last item and is meant to be
+ * handed back to {@link KuickDb} as it is to load the page that follows. Each value of the key is written with its
+ * length and its type, so the REAL and INTEGER values are read back as they were without a loss of precision.
+ */
+public class Page<E>
+{
+    private static final char TYPE_TEXT = ':',
+            TYPE_REAL = '.',
+            TYPE_INTEGER = '#';
+
+    private final List<E> mItems;
+    private final String mNextToken;
+
+    public Page(List<E> items, String nextToken)
+    {
+        mItems = items;
+        mNextToken = nextToken;
+    }
+
+    public static String createToken(Object[] keyValues)
+    {
+        StringBuilder token = new StringBuilder();
+
+        for (Object keyValue : keyValues) {
+            String value = String.valueOf(keyValue);
+            char type = TYPE_TEXT;
+
+            if (keyValue instanceof Double || keyValue instanceof Float) {
+                // Written as a double so that a float is read back as the same value.
+                value = String.valueOf(((Number) keyValue).doubleValue());
+                type = TYPE_REAL;
+            } else if (keyValue instanceof Long || keyValue instanceof Integer)
+                type = TYPE_INTEGER;
+
+            token.append(value.length())
+                    .append(type)
+                    .append(value);
+        }
+
+        return token.toString();
+    }
+
+    public List<E> getItems()
+    {
+        return mItems;
+    }
+
+    public String getNextToken()
+    {
+        return mNextToken;
+    }
+
+    public boolean hasNext()
+    {
+        return mNextToken != null;
+    }
+
+    /**
+     * @return the values of the seek key as String, Double or Long objects
+     */
+    public static Object[] readToken(String token)
+    {
+        List<Object> values = new ArrayList<>();
+        int position = 0;
+
+        try {
+            while (position < token.length()) {
+                int separator = position;
+
+                while (Character.isDigit(token.charAt(separator)))
+                    separator++;
+
+                int start = separator + 1;
+                int end = start + Integer.parseInt(token.substring(position, separator));
+                String value = token.substring(start, end);
+
+                switch (token.charAt(separator)) {
+                    case TYPE_TEXT:
+                        values.add(value);
+                        break;
+                    case TYPE_REAL:
+                        values.add(Double.valueOf(value));
+                        break;
+                    case TYPE_INTEGER:
+                        values.add(Long.valueOf(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown type " + token.charAt(separator));
+                }
+
+                position = end;
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed continuation token: " + token, e);
+        }
+
+        return values.toArray();
+    }
+}
@@ -1,20 +1,58 @@
 package com.genonbeta.android.database;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the progress of an operation and reports it to a {@link Listener}. The counters are atomic, so operations
+ * running on several threads can share the same instance.
+ * <p>
+ * By default, the listener is called for every step. With {@link #setThrottle(int, long)}, it is only called once
+ * the given number of steps have been taken or the given time has passed since the last call, and always for the
+ * final step. The steps in between still see a cancellation right away: once the listener returns false or
+ * {@link #cancel()} is called, {@link #call(Listener, int)} returns false without calling the listener until the next
+ * operation {@link #begin(Listener) begins}.
+ */
 public class Progress
 {
-    int mTotal;
-    int mCurrent;
+    private final AtomicInteger mTotal = new AtomicInteger();
+    private final AtomicInteger mCurrent = new AtomicInteger();
+    private final AtomicInteger mLastReportedStep = new AtomicInteger();
+    private final AtomicLong mLastReportTime = new AtomicLong(System.nanoTime());
+    private volatile int mStepInterval;
+    private volatile long mTimeIntervalNanos;
+    private volatile boolean mCancelled;
 
     public static Progress dissect(Listener listener)
     {
         Progress progress = listener.getProgress();
+
         if (progress == null) {
-            progress = new Progress();
-            listener.setProgress(progress);
+            synchronized (listener) {
+                progress = listener.getProgress();
+
+                if (progress == null) {
+                    progress = new Progress();
+                    listener.setProgress(progress);
+                }
+            }
         }
+
         return progress;
     }
 
+    /**
+     * Clears the cancellation left by an earlier operation, so that a listener that is reused after it returned false
+     * does not stop the next operation before its first step. The bulk operations of {@link KuickDb} call this as
+     * they begin, without clearing the counters.
+     */
+    public static void begin(Listener listener)
+    {
+        if (listener != null)
+            dissect(listener).mCancelled = false;
+    }
+
     public static void addToCurrent(Listener listener, int step)
     {
         if (listener != null)
@@ -31,40 +69,116 @@ public class Progress
     {
         if (listener != null) {
             Progress progress = dissect(listener);
-            progress.addToCurrent(addToCurrent);
-            return listener.onProgressChange(progress);
+            int current = progress.mCurrent.addAndGet(addToCurrent);
+
+            if (progress.mCancelled)
+                return false;
+
+            if (!progress.shouldReport(current))
+                return true;
+
+            if (!listener.onProgressChange(progress)) {
+                progress.cancel();
+                return false;
+            }
         }
+
         return true;
     }
 
     public void addToCurrent(int step)
     {
-        mCurrent += step;
+        mCurrent.addAndGet(step);
     }
 
     public void addToTotal(int total)
     {
-        mTotal += total;
+        mTotal.addAndGet(total);
+    }
+
+    /**
+     * Makes the operations using this instance stop at their next step. This can be called from any thread.
+     */
+    public void cancel()
+    {
+        mCancelled = true;
     }
 
     public int getCurrent()
     {
-        return mCurrent;
+        return mCurrent.get();
     }
 
     public int getTotal()
     {
-        return mTotal;
+        return mTotal.get();
+    }
+
+    public boolean isCancelled()
+    {
+        return mCancelled;
+    }
+
+    /**
+     * Clears the counters and the cancellation so that this instance can be used for another operation.
+     */
+    public void reset()
+    {
+        mTotal.set(0);
+        mCurrent.set(0);
+        mLastReportedStep.set(0);
+        mLastReportTime.set(System.nanoTime());
+        mCancelled = false;
     }
 
     public void setCurrent(int current)
     {
-        mCurrent = current;
+        mCurrent.set(current);
+    }
+
+    /**
+     * @param stepInterval       the steps to take between two calls to the listener, or zero to not limit by steps
+     * @param timeIntervalMillis the time to pass between two calls to the listener, or zero to not limit by time
+     */
+    public Progress setThrottle(int stepInterval, long timeIntervalMillis)
+    {
+        mStepInterval = stepInterval;
+        mTimeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(timeIntervalMillis);
+        return this;
     }
 
     public void setTotal(int total)
     {
-        mTotal = total;
+        mTotal.set(total);
+    }
+
+    private boolean shouldReport(int current)
+    {
+        int stepInterval = mStepInterval;
+        long timeIntervalNanos = mTimeIntervalNanos;
+
+        if (stepInterval <= 0 && timeIntervalNanos <= 0)
+            return true;
+
+        int lastReportedStep = mLastReportedStep.get();
+        int total = mTotal.get();
+        long now = timeIntervalNanos > 0 ? System.nanoTime() : 0;
+
+        if (total > 0 && current >= total)
+            mLastReportedStep.set(current);
+        else {
+            boolean due = (stepInterval > 0 && current - lastReportedStep >= stepInterval)
+                    || (timeIntervalNanos > 0 && now - mLastReportTime.get() >= timeIntervalNanos);
+
+            // Only one of the threads that reach the interval at once reports it.
+            if (!due || !mLastReportedStep.compareAndSet(lastReportedStep, current))
+                return false;
+        }
+
+        if (timeIntervalNanos > 0)
+            mLastReportTime.set(now);
+
+        return true;
     }
 
     public interface Listener
@@ -78,7 +192,7 @@ public class Progress
 
     public abstract static class SimpleListener implements Listener
     {
-        private Progress mProgress;
+        private volatile Progress mProgress;
 
         @Override
         public Progress getProgress()
@@ -0,0 +1,277 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the results of {@link SQLQuery.Select}s in least-recently-used order. A result is stored with the versions
+ * that the tables it was read from had before the query ran, and is only served while all of them are current.
+ * The cache is bounded both by the entry count and by the estimated heap size of the rows it holds.
+ */
+public class QueryCache
+{
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private int mMaxEntries;
+    private long mMaxBytes;
+    private long mBytes;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    public QueryCache(int maxEntries, long maxBytes)
+    {
+        mMaxEntries = maxEntries;
+        mMaxBytes = maxBytes;
+    }
+
+    public synchronized void clear()
+    {
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    private static List<ContentValues> copy(List<ContentValues> rows)
+    {
+        List<ContentValues> list = new ArrayList<>(rows.size());
+
+        for (ContentValues row : rows)
+            list.add(new ContentValues(row));
+
+        return list;
+    }
+
+    public static long estimateBytes(List<ContentValues> rows)
+    {
+        long bytes = 16;
+
+        for (ContentValues row : rows)
+            bytes += estimateBytes(row);
+
+        return bytes;
+    }
+
+    /**
+     * @return the estimated heap size of the row, including its slot in a list
+     */
+    public static long estimateBytes(ContentValues row)
+    {
+        // The map itself with its table and an entry of 32 bytes per column.
+        long bytes = 4 + 64;
+
+        for (Map.Entry<String, Object> entry : row.valueSet()) {
+            Object value = entry.getValue();
+            bytes += 32;
+
+            if (value instanceof String)
+                bytes += 40 + 2L * ((String) value).length();
+            else if (value instanceof byte[])
+                bytes += 16 + ((byte[]) value).length;
+            else if (value != null)
+                bytes += 16;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @return the estimated heap size of the given columns of the current row of the cursor, counted as if they were
+     * read into a {@link ContentValues}
+     */
+    public static long estimateBytes(Cursor cursor, int[] columnIndexes)
+    {
+        long bytes = 4 + 64;
+
+        for (int columnIndex : columnIndexes) {
+            if (columnIndex == -1)
+                continue;
+
+            bytes += 32;
+
+            switch (cursor.getType(columnIndex)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    bytes += 40 + 2L * cursor.getString(columnIndex).length();
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    bytes += 16 + cursor.getBlob(columnIndex).length;
+                    break;
+                default:
+                    bytes += 16;
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @return a copy of the cached rows, or null if there are none for the given table versions
+     */
+    public synchronized List<ContentValues> get(SQLQuery.Select select, long[] tableVersions)
+    {
+        Key key = new Key(select);
+        Entry entry = mEntries.get(key);
+
+        if (entry == null || !Arrays.equals(entry.tableVersions, tableVersions)) {
+            if (entry != null)
+                remove(key);
+
+            mMissCount++;
+            return null;
+        }
+
+        mHitCount++;
+        return copy(entry.rows);
+    }
+
+    public synchronized long getBytes()
+    {
+        return mBytes;
+    }
+
+    public synchronized long getEvictionCount()
+    {
+        return mEvictionCount;
+    }
+
+    public synchronized long getHitCount()
+    {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return mMissCount;
+    }
+
+    public long getMaxBytes()
+    {
+        return mMaxBytes;
+    }
+
+    public int getMaxEntries()
+    {
+        return mMaxEntries;
+    }
+
+    public synchronized int getSize()
+    {
+        return mEntries.size();
+    }
+
+    public boolean isEnabled()
+    {
+        return mMaxEntries > 0 && mMaxBytes > 0;
+    }
+
+    public synchronized void put(SQLQuery.Select select, long[] tableVersions, List<ContentValues> rows)
+    {
+        if (!isEnabled())
+            return;
+
+        long bytes = estimateBytes(rows);
+
+        if (bytes > mMaxBytes)
+            return;
+
+        Key key = new Key(select);
+        remove(key);
+        mEntries.put(key, new Entry(tableVersions, copy(rows), bytes));
+        mBytes += bytes;
+        trimToCapacity();
+    }
+
+    private void remove(Key key)
+    {
+        Entry entry = mEntries.remove(key);
+
+        if (entry != null)
+            mBytes -= entry.bytes;
+    }
+
+    public synchronized void setCapacity(int maxEntries, long maxBytes)
+    {
+        mMaxEntries = maxEntries;
+        mMaxBytes = maxBytes;
+        trimToCapacity();
+    }
+
+    private void trimToCapacity()
+    {
+        Iterator<Map.Entry<Key, Entry>> iterator = mEntries.entrySet().iterator();
+
+        while ((mEntries.size() > Math.max(mMaxEntries, 0) || mBytes > mMaxBytes) && iterator.hasNext()) {
+            mBytes -= iterator.next().getValue().bytes;
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    private static class Entry
+    {
+        final long[] tableVersions;
+        final List<ContentValues> rows;
+        final long bytes;
+
+        Entry(long[] tableVersions, List<ContentValues> rows, long bytes)
+        {
+            this.tableVersions = tableVersions;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Key
+    {
+        final String[] parts;
+        final String[] columns;
+        final String[] whereArgs;
+        final String[] dependencies;
+        final int hashCode;
+
+        Key(SQLQuery.Select select)
+        {
+            parts = new String[]{select.tableName, select.where, select.groupBy, select.having, select.orderBy,
+                    select.limit};
+            // The arrays are copied as the caller may still change them.
+            columns = select.columns == null ? null : select.columns.clone();
+            whereArgs = select.whereArgs == null ? null : select.whereArgs.clone();
+            dependencies = select.dependencies == null ? null : select.dependencies.clone();
+
+            int hashCode = Arrays.hashCode(parts);
+            hashCode = 31 * hashCode + Arrays.hashCode(columns);
+            hashCode = 31 * hashCode + Arrays.hashCode(whereArgs);
+            hashCode = 31 * hashCode + Arrays.hashCode(dependencies);
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+
+            return hashCode == other.hashCode && Arrays.equals(parts, other.parts)
+                    && Arrays.equals(columns, other.columns) && Arrays.equals(whereArgs, other.whereArgs)
+                    && Arrays.equals(dependencies, other.dependencies);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
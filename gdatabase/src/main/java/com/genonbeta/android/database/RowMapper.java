@@ -0,0 +1,31 @@
+package com.genonbeta.android.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Moves the columns of an object between a {@link Cursor} or a {@link SQLiteStatement} and its fields without going
+ * through {@link android.content.ContentValues}. Implementations are generated for the classes annotated with
+ * {@link com.genonbeta.android.database.annotation.GenerateMapper}.
+ */
+public interface RowMapper<V>
+{
+    /**
+     * Binds the columns in the order of {@link #getColumns()} starting from the given position.
+     *
+     * @return the position that follows the last bound column
+     */
+    int bind(SQLiteStatement statement, int offset, V object);
+
+    /**
+     * @return the positions of {@link #getColumns()} in the cursor, -1 for the ones that the cursor does not have
+     */
+    int[] getColumnIndexes(Cursor cursor);
+
+    /**
+     * @return the mapped columns; the array is shared and should not be modified
+     */
+    String[] getColumns();
+
+    void read(Cursor cursor, int[] columnIndexes, V object);
+}
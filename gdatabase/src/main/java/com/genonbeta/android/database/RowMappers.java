@@ -0,0 +1,78 @@
+package com.genonbeta.android.database;
+
+import android.database.Cursor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds the generated {@link RowMapper} of a class, or the one registered for it by hand. A generated mapper is found
+ * by a name derived from the name of its class, which the consumer ProGuard rules of the library keep for the
+ * annotated classes.
+ */
+public class RowMappers
+{
+    public static final String GENERATED_SUFFIX = "_RowMapper";
+
+    private static final Object NONE = new Object();
+    private static final Map<Class<?>, Object> MAPPERS = new HashMap<>();
+
+    /**
+     * @return the mapper of the class or null if it has none
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> RowMapper<V> get(Class<V> clazz)
+    {
+        synchronized (MAPPERS) {
+            Object mapper = MAPPERS.get(clazz);
+
+            if (mapper == null) {
+                mapper = loadGenerated(clazz);
+                MAPPERS.put(clazz, mapper == null ? NONE : mapper);
+            }
+
+            return mapper == NONE ? null : (RowMapper<V>) mapper;
+        }
+    }
+
+    public static int[] getColumnIndexes(Cursor cursor, String[] columns)
+    {
+        int[] indexes = new int[columns.length];
+
+        for (int i = 0; i < columns.length; i++)
+            indexes[i] = cursor.getColumnIndex(columns[i]);
+
+        return indexes;
+    }
+
+    public static String getGeneratedName(Class<?> clazz)
+    {
+        String name = clazz.getName();
+        int packageEnd = name.lastIndexOf('.') + 1;
+
+        return name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_') + GENERATED_SUFFIX;
+    }
+
+    private static RowMapper<?> loadGenerated(Class<?> clazz)
+    {
+        try {
+            return (RowMapper<?>) Class.forName(getGeneratedName(clazz), true, clazz.getClassLoader())
+                    .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Could not create the generated mapper of " + clazz.getName(),
+                    e.getCause());
+        } catch (InstantiationException | IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("Could not create the generated mapper of " + clazz.getName(), e);
+        }
+    }
+
+    public static <V> void register(Class<V> clazz, RowMapper<V> mapper)
+    {
+        synchronized (MAPPERS) {
+            MAPPERS.put(clazz, mapper == null ? NONE : mapper);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A query result stored column by column in primitive arrays with a bitmap for the null cells, instead of one
+ * {@link ContentValues} per row. The column names are kept once for all rows. A column keeps the storage of the type
+ * its first non-null cell had; integer columns that later meet real values are widened to doubles and columns that
+ * mix other types fall back to boxed values.
+ * <p>
+ * {@link #slice(int, int)} returns a view that shares the arrays of this set, so it costs nothing to create.
+ */
+public class RowSet
+{
+    public static final int TYPE_NULL = Cursor.FIELD_TYPE_NULL;
+    public static final int TYPE_INTEGER = Cursor.FIELD_TYPE_INTEGER;
+    public static final int TYPE_FLOAT = Cursor.FIELD_TYPE_FLOAT;
+    public static final int TYPE_STRING = Cursor.FIELD_TYPE_STRING;
+    public static final int TYPE_BLOB = Cursor.FIELD_TYPE_BLOB;
+    public static final int TYPE_MIXED = -1;
+
+    private final String[] mColumnNames;
+    private final Map<String, Integer> mColumnIndexes;
+    private final Column[] mColumns;
+    private final int[] mValueTypes;
+    private final int mOffset;
+    private final int mRowCount;
+
+    private RowSet(String[] columnNames, Map<String, Integer> columnIndexes, Column[] columns, int[] valueTypes,
+                   int offset, int rowCount)
+    {
+        mColumnNames = columnNames;
+        mColumnIndexes = columnIndexes;
+        mColumns = columns;
+        mValueTypes = valueTypes;
+        mOffset = offset;
+        mRowCount = rowCount;
+    }
+
+    public static RowSet read(Cursor cursor)
+    {
+        int columnCount = cursor.getColumnCount();
+        int rowCount = Math.max(cursor.getCount(), 0);
+        String[] columnNames = new String[columnCount];
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        Column[] columns = new Column[columnCount];
+        int[] valueTypes = new int[columnCount];
+
+        for (int i = 0; i < columnCount; i++) {
+            columnNames[i] = cursor.getColumnName(i);
+            columnIndexes.put(columnNames[i], i);
+            columns[i] = new Column(rowCount);
+        }
+
+        int row = 0;
+
+        if (cursor.moveToFirst()) {
+            for (int i = 0; i < columnCount; i++)
+                valueTypes[i] = cursor.getType(i);
+
+            do {
+                for (int i = 0; i < columnCount; i++)
+                    columns[i].read(cursor, i, row);
+
+                row++;
+            } while (cursor.moveToNext() && row < rowCount);
+        }
+
+        return new RowSet(columnNames, columnIndexes, columns, valueTypes, 0, row);
+    }
+
+    private Column column(int columnIndex)
+    {
+        return mColumns[columnIndex];
+    }
+
+    private int position(int row)
+    {
+        if (row < 0 || row >= mRowCount)
+            throw new IndexOutOfBoundsException("Row " + row + " is out of 0.." + mRowCount);
+
+        return mOffset + row;
+    }
+
+    public byte[] getBlob(int row, int columnIndex)
+    {
+        int position = position(row);
+        Column column = column(columnIndex);
+
+        if (column.isNull(position))
+            return null;
+
+        switch (column.type) {
+            case TYPE_BLOB:
+                return column.blobs[position];
+            case TYPE_MIXED:
+                Object value = column.objects[position];
+                return value instanceof byte[] ? (byte[]) value : String.valueOf(value).getBytes();
+            default:
+                return getString(row, columnIndex).getBytes();
+        }
+    }
+
+    public int getColumnCount()
+    {
+        return mColumnNames.length;
+    }
+
+    /**
+     * @return the position of the column or -1 if it does not exist
+     */
+    public int getColumnIndex(String columnName)
+    {
+        Integer index = mColumnIndexes.get(columnName);
+        return index == null ? -1 : index;
+    }
+
+    public String getColumnName(int columnIndex)
+    {
+        return mColumnNames[columnIndex];
+    }
+
+    /**
+     * @return one of the TYPE_ constants for the storage of the column
+     */
+    public int getColumnType(int columnIndex)
+    {
+        return column(columnIndex).type;
+    }
+
+    public double getDouble(int row, int columnIndex)
+    {
+        int position = position(row);
+        Column column = column(columnIndex);
+
+        if (column.isNull(position))
+            return 0;
+
+        switch (column.type) {
+            case TYPE_INTEGER:
+                return column.longs[position];
+            case TYPE_FLOAT:
+                return column.doubles[position];
+            case TYPE_STRING:
+                return parseDouble(column.strings[position]);
+            case TYPE_MIXED:
+                Object value = column.objects[position];
+                return value instanceof Number ? ((Number) value).doubleValue() : parseDouble(String.valueOf(value));
+            default:
+                return 0;
+        }
+    }
+
+    public long getLong(int row, int columnIndex)
+    {
+        int position = position(row);
+        Column column = column(columnIndex);
+
+        if (column.isNull(position))
+            return 0;
+
+        switch (column.type) {
+            case TYPE_INTEGER:
+                return column.longs[position];
+            case TYPE_FLOAT:
+                return (long) column.doubles[position];
+            case TYPE_STRING:
+                return (long) parseDouble(column.strings[position]);
+            case TYPE_MIXED:
+                Object value = column.objects[position];
+                return value instanceof Number ? ((Number) value).longValue()
+                        : (long) parseDouble(String.valueOf(value));
+            default:
+                return 0;
+        }
+    }
+
+    public int getRowCount()
+    {
+        return mRowCount;
+    }
+
+    public String getString(int row, int columnIndex)
+    {
+        int position = position(row);
+        Column column = column(columnIndex);
+
+        if (column.isNull(position))
+            return null;
+
+        switch (column.type) {
+            case TYPE_INTEGER:
+                return String.valueOf(column.longs[position]);
+            case TYPE_FLOAT:
+                return String.valueOf(column.doubles[position]);
+            case TYPE_STRING:
+                return column.strings[position];
+            case TYPE_BLOB:
+                return new String(column.blobs[position]);
+            default:
+                Object value = column.objects[position];
+                return value instanceof byte[] ? new String((byte[]) value) : String.valueOf(value);
+        }
+    }
+
+    /**
+     * @return the row in the same form {@link KuickDb#getTable} would return it, where the values of a column take
+     * the type its cell had in the first row of the result, as {@link TableCursor} does
+     */
+    public ContentValues getValues(int row)
+    {
+        ContentValues values = new ContentValues(mColumnNames.length);
+        int position = position(row);
+
+        for (int i = 0; i < mColumnNames.length; i++) {
+            Column column = mColumns[i];
+            String name = mColumnNames[i];
+
+            if (column.isNull(position))
+                values.putNull(name);
+            else if (mValueTypes[i] == TYPE_INTEGER)
+                values.put(name, getLong(row, i));
+            else if (mValueTypes[i] == TYPE_FLOAT)
+                values.put(name, (float) getDouble(row, i));
+            else if (mValueTypes[i] == TYPE_BLOB)
+                values.put(name, getBlob(row, i));
+            else
+                values.put(name, getString(row, i));
+        }
+
+        return values;
+    }
+
+    public boolean isNull(int row, int columnIndex)
+    {
+        return column(columnIndex).isNull(position(row));
+    }
+
+    private static double parseDouble(String value)
+    {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return a view of the rows from {@code fromRow} (inclusive) to {@code toRow} (exclusive) that shares the
+     * storage of this set
+     */
+    public RowSet slice(int fromRow, int toRow)
+    {
+        if (fromRow < 0 || toRow > mRowCount || fromRow > toRow)
+            throw new IndexOutOfBoundsException("Slice " + fromRow + ".." + toRow + " is out of 0.." + mRowCount);
+
+        return new RowSet(mColumnNames, mColumnIndexes, mColumns, mValueTypes, mOffset + fromRow, toRow - fromRow);
+    }
+
+    private static class Column
+    {
+        final int capacity;
+        final long[] nulls;
+        int type = TYPE_NULL;
+        long[] longs;
+        double[] doubles;
+        String[] strings;
+        byte[][] blobs;
+        Object[] objects;
+
+        Column(int capacity)
+        {
+            this.capacity = capacity;
+            this.nulls = new long[(capacity + 63) / 64];
+        }
+
+        boolean isNull(int position)
+        {
+            return (nulls[position >> 6] & (1L << position)) != 0;
+        }
+
+        void read(Cursor cursor, int index, int position)
+        {
+            int cellType = cursor.getType(index);
+
+            if (cellType == TYPE_NULL) {
+                nulls[position >> 6] |= 1L << position;
+                return;
+            }
+
+            if (type == TYPE_NULL)
+                setType(cellType);
+            else if (type == TYPE_INTEGER && cellType == TYPE_FLOAT)
+                widenToDouble(position);
+            else if (type != cellType && type != TYPE_MIXED && !(type == TYPE_FLOAT && cellType == TYPE_INTEGER))
+                widenToObjects(position);
+
+            switch (type) {
+                case TYPE_INTEGER:
+                    longs[position] = cursor.getLong(index);
+                    break;
+                case TYPE_FLOAT:
+                    doubles[position] = cursor.getDouble(index);
+                    break;
+                case TYPE_STRING:
+                    strings[position] = cursor.getString(index);
+                    break;
+                case TYPE_BLOB:
+                    blobs[position] = cursor.getBlob(index);
+                    break;
+                default:
+                    if (cellType == TYPE_INTEGER)
+                        objects[position] = cursor.getLong(index);
+                    else if (cellType == TYPE_FLOAT)
+                        objects[position] = cursor.getDouble(index);
+                    else if (cellType == TYPE_BLOB)
+                        objects[position] = cursor.getBlob(index);
+                    else
+                        objects[position] = cursor.getString(index);
+            }
+        }
+
+        void setType(int type)
+        {
+            this.type = type;
+
+            switch (type) {
+                case TYPE_INTEGER:
+                    longs = new long[capacity];
+                    break;
+                case TYPE_FLOAT:
+                    doubles = new double[capacity];
+                    break;
+                case TYPE_STRING:
+                    strings = new String[capacity];
+                    break;
+                case TYPE_BLOB:
+                    blobs = new byte[capacity][];
+                    break;
+            }
+        }
+
+        void widenToDouble(int rowsRead)
+        {
+            doubles = new double[capacity];
+
+            for (int i = 0; i < rowsRead; i++)
+                doubles[i] = longs[i];
+
+            longs = null;
+            type = TYPE_FLOAT;
+        }
+
+        void widenToObjects(int rowsRead)
+        {
+            objects = new Object[capacity];
+
+            for (int i = 0; i < rowsRead; i++) {
+                if (isNull(i))
+                    continue;
+
+                switch (type) {
+                    case TYPE_INTEGER:
+                        objects[i] = longs[i];
+                        break;
+                    case TYPE_FLOAT:
+                        objects[i] = doubles[i];
+                        break;
+                    case TYPE_STRING:
+                        objects[i] = strings[i];
+                        break;
+                    case TYPE_BLOB:
+                        objects[i] = blobs[i];
+                        break;
+                }
+            }
+
+            longs = null;
+            doubles = null;
+            strings = null;
+            blobs = null;
+            type = TYPE_MIXED;
+        }
+    }
+}
@@ -4,6 +4,17 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Created by: veli
  * Date: 12/1/16 2:41 PM
@@ -41,10 +52,338 @@ public class SQLQuery
 		db.execSQL(stringBuilder.toString());
 	}
 
+	/**
+	 * Creates the full-text table and the triggers that copy the changes of its content table into it. The update
+	 * triggers only fire for the updates that touch the indexed columns.
+	 */
+	public static void createFullTextTable(SQLiteDatabase db, SQLValues.FullTextTable table)
+	{
+		String name = table.getName();
+		String contentTable = table.getContentTable();
+		String columns = getColumnList(table.getColumns(), "");
+		String deleteOld = " BEGIN DELETE FROM `" + name + "` WHERE `docid` = old.`rowid`; END";
+		String insertNew = " BEGIN INSERT INTO `" + name + "` (`docid`, " + columns + ") VALUES (new.`rowid`, "
+				+ getColumnList(table.getColumns(), "new.") + "); END";
+		StringBuilder stringBuilder = new StringBuilder();
+
+		stringBuilder.append("CREATE VIRTUAL TABLE IF NOT EXISTS `");
+		stringBuilder.append(name);
+		stringBuilder.append("` USING fts4(content=\"");
+		stringBuilder.append(contentTable);
+		stringBuilder.append("\", ");
+		stringBuilder.append(columns);
+
+		if (table.getTokenizer() != null)
+		{
+			stringBuilder.append(", tokenize=");
+			stringBuilder.append(table.getTokenizer());
+		}
+
+		stringBuilder.append(")");
+
+		db.execSQL(stringBuilder.toString());
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + name + "_bu` BEFORE UPDATE OF " + columns + " ON `"
+				+ contentTable + "`" + deleteOld);
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + name + "_bd` BEFORE DELETE ON `" + contentTable + "`"
+				+ deleteOld);
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + name + "_au` AFTER UPDATE OF " + columns + " ON `"
+				+ contentTable + "`" + insertNew);
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + name + "_ai` AFTER INSERT ON `" + contentTable + "`"
+				+ insertNew);
+	}
+
+	public static void createIndex(SQLiteDatabase db, SQLValues.Table table, SQLValues.Index index)
+	{
+		db.execSQL(getIndexSql(table, index, true));
+	}
+
+	/**
+	 * Creates the indexes declared for the table together with the one that makes its conflict keys unique.
+	 */
+	public static void createIndexes(SQLiteDatabase db, SQLValues.Table table)
+	{
+		for (SQLValues.Index index : table.getIndexes().values())
+			createIndex(db, table, index);
+
+		SQLValues.Index conflictKeyIndex = getConflictKeyIndex(table);
+
+		if (conflictKeyIndex != null)
+			createIndex(db, table, conflictKeyIndex);
+	}
+
+	/**
+	 * Creates the tables that keep the contents of the {@link LargeObject} columns.
+	 */
+	public static void createLargeObjectTables(SQLiteDatabase db)
+	{
+		db.execSQL("CREATE TABLE IF NOT EXISTS `" + LargeObject.TABLE_NAME + "` (`" + LargeObject.FIELD_ID
+				+ "` integer primary key autoincrement, `" + LargeObject.FIELD_LENGTH + "` integer not null)");
+		db.execSQL("CREATE TABLE IF NOT EXISTS `" + LargeObject.TABLE_CHUNKS + "` (`" + LargeObject.FIELD_OBJECT
+				+ "` integer not null, `" + LargeObject.FIELD_CHUNK + "` integer not null, `" + LargeObject.FIELD_DATA
+				+ "` blob not null, PRIMARY KEY (`" + LargeObject.FIELD_OBJECT + "`, `" + LargeObject.FIELD_CHUNK
+				+ "`))");
+	}
+
+	/**
+	 * Creates the triggers that remove the large objects of the table once their rows are removed or refer to
+	 * other objects.
+	 */
+	public static void createLargeObjectTriggers(SQLiteDatabase db, SQLValues.Table table)
+	{
+		for (SQLValues.Column column : table.getColumns().values())
+		{
+			if (!column.isLargeObject())
+				continue;
+
+			String name = table.getName() + "_" + column.getName();
+			String oldValue = "old.`" + column.getName() + "`";
+			String removeOld = " BEGIN DELETE FROM `" + LargeObject.TABLE_CHUNKS + "` WHERE `"
+					+ LargeObject.FIELD_OBJECT + "` = " + oldValue + "; DELETE FROM `" + LargeObject.TABLE_NAME
+					+ "` WHERE `" + LargeObject.FIELD_ID + "` = " + oldValue + "; END";
+
+			db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + name + "_lo_ad` AFTER DELETE ON `" + table.getName()
+					+ "` WHEN " + oldValue + " IS NOT NULL" + removeOld);
+			db.execSQL("CREATE TRIGGER IF NOT EXISTS `" + name + "_lo_au` AFTER UPDATE OF `" + column.getName()
+					+ "` ON `" + table.getName() + "` WHEN " + oldValue + " IS NOT NULL AND " + oldValue
+					+ " IS NOT new.`" + column.getName() + "`" + removeOld);
+		}
+	}
+
 	public static void createTables(SQLiteDatabase db, SQLValues values)
 	{
+		if (hasLargeObjects(values))
+			createLargeObjectTables(db);
+
 		for (SQLValues.Table table : values.getTables().values())
+		{
 			createTable(db, table);
+			createIndexes(db, table);
+			createLargeObjectTriggers(db, table);
+		}
+
+		for (SQLValues.FullTextTable table : values.getFullTextTables().values())
+			createFullTextTable(db, table);
+	}
+
+	/**
+	 * Fills the full-text table again from its content table, e.g., after it was created for a table that already
+	 * had rows or after the content table was changed without the triggers.
+	 */
+	public static void rebuildFullTextTable(SQLiteDatabase db, SQLValues.FullTextTable table)
+	{
+		db.execSQL("INSERT INTO `" + table.getName() + "` (`" + table.getName() + "`) VALUES ('rebuild')");
+	}
+
+	/**
+	 * Brings the database up to the given schema with additive changes only: missing tables are created, missing
+	 * columns are added to the existing tables and missing indexes, large object triggers and full-text tables are
+	 * created, the latter filled with the rows their content tables already have. Nothing is dropped or altered, so
+	 * columns that cannot be added to an existing table, such as the ones that are not nullable and have no default
+	 * value, make this fail, as do the conflict keys whose values the existing rows do not hold uniquely.
+	 */
+	public static void upgradeTables(SQLiteDatabase db, SQLValues values)
+	{
+		if (hasLargeObjects(values))
+			createLargeObjectTables(db);
+
+		Set<String> existingTables = new HashSet<>();
+		Cursor cursor = db.rawQuery("SELECT `name` FROM `sqlite_master` WHERE `type` = 'table'", null);
+
+		try
+		{
+			while (cursor.moveToNext())
+				existingTables.add(cursor.getString(0));
+		}
+		finally
+		{
+			cursor.close();
+		}
+
+		for (SQLValues.Table table : values.getTables().values())
+		{
+			if (existingTables.contains(table.getName()))
+			{
+				Set<String> existingColumns = new HashSet<>();
+				Cursor columnCursor = db.rawQuery("PRAGMA table_info(`" + table.getName() + "`)", null);
+
+				try
+				{
+					int nameIndex = columnCursor.getColumnIndexOrThrow("name");
+
+					while (columnCursor.moveToNext())
+						existingColumns.add(columnCursor.getString(nameIndex));
+				}
+				finally
+				{
+					columnCursor.close();
+				}
+
+				for (SQLValues.Column column : table.getColumns().values())
+					if (!existingColumns.contains(column.getName()))
+						db.execSQL("ALTER TABLE `" + table.getName() + "` ADD COLUMN " + column.toString());
+			}
+			else
+				createTable(db, table);
+
+			createIndexes(db, table);
+			createLargeObjectTriggers(db, table);
+		}
+
+		for (SQLValues.FullTextTable table : values.getFullTextTables().values())
+		{
+			createFullTextTable(db, table);
+
+			if (!existingTables.contains(table.getName()))
+				rebuildFullTextTable(db, table);
+		}
+	}
+
+	/**
+	 * Compares the indexes declared in the given schema against the ones that exist in the database. The indexes
+	 * SQLite creates for the UNIQUE and PRIMARY KEY constraints are not taken into account.
+	 */
+	public static IndexReport compareIndexes(SQLiteDatabase db, SQLValues values)
+	{
+		Map<String, String> existing = new HashMap<>();
+		IndexReport report = new IndexReport();
+		Cursor cursor = db.rawQuery("SELECT `name`, `sql` FROM `sqlite_master` WHERE `type` = 'index'"
+				+ " AND `sql` IS NOT NULL", null);
+
+		try
+		{
+			while (cursor.moveToNext())
+				existing.put(cursor.getString(0), cursor.getString(1));
+		}
+		finally
+		{
+			cursor.close();
+		}
+
+		for (SQLValues.Table table : values.getTables().values())
+		{
+			List<SQLValues.Index> indexes = new ArrayList<>(table.getIndexes().values());
+			SQLValues.Index conflictKeyIndex = getConflictKeyIndex(table);
+
+			if (conflictKeyIndex != null)
+				indexes.add(conflictKeyIndex);
+
+			for (SQLValues.Index index : indexes)
+			{
+				String sql = existing.remove(index.getName());
+
+				if (sql == null)
+					report.missing.add(index);
+				else if (!sql.equals(getIndexSql(table, index, false)))
+					report.changed.add(index);
+			}
+		}
+
+		report.undeclared.addAll(existing.keySet());
+
+		return report;
+	}
+
+	/**
+	 * The conflict keys are made unique with an index rather than a table constraint, as only an index can be added
+	 * to a table that already exists. None is needed when a column constraint already makes the only key unique.
+	 */
+	private static SQLValues.Index getConflictKeyIndex(SQLValues.Table table)
+	{
+		String[] conflictKeys = table.getConflictKeys();
+
+		if (conflictKeys == null || conflictKeys.length == 0 || isUnique(table, conflictKeys))
+			return null;
+
+		return new SQLValues.Index(table.getName() + "_conflict_keys", conflictKeys).setUnique(true);
+	}
+
+	private static String getColumnList(String[] columns, String prefix)
+	{
+		StringBuilder stringBuilder = new StringBuilder();
+
+		for (int i = 0; i < columns.length; i++)
+		{
+			if (i > 0)
+				stringBuilder.append(", ");
+
+			stringBuilder.append(prefix);
+			stringBuilder.append("`");
+			stringBuilder.append(columns[i]);
+			stringBuilder.append("`");
+		}
+
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * SQLite keeps the statement an index was created with, apart from the IF NOT EXISTS clause, so the statement
+	 * built without it can be compared against what sqlite_master holds.
+	 */
+	private static String getIndexSql(SQLValues.Table table, SQLValues.Index index, boolean ifNotExists)
+	{
+		StringBuilder stringBuilder = new StringBuilder();
+
+		stringBuilder.append(index.isUnique() ? "CREATE UNIQUE INDEX " : "CREATE INDEX ");
+
+		if (ifNotExists)
+			stringBuilder.append("IF NOT EXISTS ");
+
+		stringBuilder.append("`");
+		stringBuilder.append(index.getName());
+		stringBuilder.append("` ON `");
+		stringBuilder.append(table.getName());
+		stringBuilder.append("` (");
+
+		String[] columns = index.getColumns();
+
+		for (int i = 0; i < columns.length; i++)
+		{
+			if (i > 0)
+				stringBuilder.append(", ");
+
+			if (index.isExpression())
+				stringBuilder.append(columns[i]);
+			else
+			{
+				stringBuilder.append("`");
+				stringBuilder.append(columns[i]);
+				stringBuilder.append("`");
+			}
+		}
+
+		stringBuilder.append(")");
+
+		if (index.getWhere() != null)
+		{
+			stringBuilder.append(" WHERE ");
+			stringBuilder.append(index.getWhere());
+		}
+
+		return stringBuilder.toString();
+	}
+
+	private static boolean hasLargeObjects(SQLValues values)
+	{
+		for (SQLValues.Table table : values.getTables().values())
+			if (table.hasLargeObjects())
+				return true;
+
+		return false;
+	}
+
+	private static boolean isUnique(SQLValues.Table table, String[] columns)
+	{
+		if (columns.length != 1)
+			return false;
+
+		SQLValues.Column column = table.getColumn(columns[0]);
+
+		if (column == null || column.getExtra() == null)
+			return false;
+
+		String extra = column.getExtra().toLowerCase();
+
+		return extra.contains("primary key") || extra.contains("unique");
 	}
 
 	public static class Select
@@ -60,7 +399,17 @@ public class SQLQuery
 		public String having;
 		public String orderBy;
 		public String limit;
+		public String[] seekColumns;
+		public String[] dependencies;
+		public boolean seekDescending;
 		public LoadListener loadListener;
+		public List<Relation<?, ?>> relations;
+
+		/**
+		 * The where arguments with their types, bound in place of {@link #whereArgs} when set, so that the REAL
+		 * values of a seek key are compared with their full precision.
+		 */
+		Object[] typedWhereArgs;
 
 		public Select(String tableName, String... columns)
 		{
@@ -68,11 +417,145 @@ public class SQLQuery
 			this.columns = columns;
 		}
 
+		/**
+		 * Makes the objects that are loaded with this query have their children loaded with the relation.
+		 */
+		public Select addRelation(Relation<?, ?> relation)
+		{
+			if (relations == null)
+				relations = new ArrayList<>();
+
+			relations.add(relation);
+			return this;
+		}
+
+		public Select copy()
+		{
+			Select select = new Select(tableName, columns);
+			select.mItems = mItems;
+			select.tag = tag;
+			select.where = where;
+			select.whereArgs = whereArgs;
+			select.typedWhereArgs = typedWhereArgs;
+			select.groupBy = groupBy;
+			select.having = having;
+			select.orderBy = orderBy;
+			select.limit = limit;
+			select.seekColumns = seekColumns;
+			select.seekDescending = seekDescending;
+			select.dependencies = dependencies;
+			select.loadListener = loadListener;
+			select.relations = relations;
+
+			return select;
+		}
+
+		/**
+		 * Creates a copy of this query that returns the rows following the given seek key in the order of
+		 * {@link #seekColumns}. Instead of skipping rows with an offset, the key is turned into a predicate of the
+		 * form {@code k1 > ? OR (k1 = ? AND k2 > ?)} which stays as fast as the first page on indexed columns.
+		 *
+		 * @param afterValues the key of the last row of the previous page, or null for the first page. The Double and
+		 *                    Long values are bound with their types.
+		 * @param limit       the maximum row count of the page
+		 */
+		public Select createPage(Object[] afterValues, int limit)
+		{
+			if (seekColumns == null || seekColumns.length == 0)
+				throw new IllegalStateException("Seek columns are not defined for table " + tableName);
+
+			Select select = new Select(tableName, columns);
+			select.mItems = mItems;
+			select.tag = tag;
+			select.groupBy = groupBy;
+			select.having = having;
+			select.seekColumns = seekColumns;
+			select.seekDescending = seekDescending;
+			select.dependencies = dependencies;
+			select.loadListener = loadListener;
+			select.relations = relations;
+			select.setLimit(limit);
+
+			StringBuilder orderBuilder = new StringBuilder();
+
+			for (String column : seekColumns)
+			{
+				if (orderBuilder.length() > 0)
+					orderBuilder.append(", ");
+
+				orderBuilder.append(column)
+						.append(seekDescending ? " DESC" : " ASC");
+			}
+
+			select.orderBy = orderBuilder.toString();
+
+			if (afterValues == null)
+			{
+				select.where = where;
+				select.whereArgs = whereArgs;
+				select.typedWhereArgs = typedWhereArgs;
+				return select;
+			}
+
+			if (afterValues.length != seekColumns.length)
+				throw new IllegalArgumentException("Expected " + seekColumns.length + " seek values, got "
+						+ afterValues.length);
+
+			String operator = seekDescending ? " < ?" : " > ?";
+			StringBuilder seekBuilder = new StringBuilder();
+			List<Object> args = new ArrayList<>();
+
+			if (typedWhereArgs != null)
+				args.addAll(Arrays.asList(typedWhereArgs));
+			else if (whereArgs != null)
+				args.addAll(Arrays.asList(whereArgs));
+
+			for (int i = 0; i < seekColumns.length; i++)
+			{
+				if (i > 0)
+					seekBuilder.append(" OR ");
+
+				seekBuilder.append("(");
+
+				for (int j = 0; j < i; j++)
+				{
+					seekBuilder.append(seekColumns[j])
+							.append(" = ? AND ");
+					args.add(afterValues[j]);
+				}
+
+				seekBuilder.append(seekColumns[i])
+						.append(operator)
+						.append(")");
+				args.add(afterValues[i]);
+			}
+
+			select.where = where == null || where.length() == 0 ? seekBuilder.toString()
+					: "(" + where + ") AND (" + seekBuilder.toString() + ")";
+			select.typedWhereArgs = args.toArray();
+			select.whereArgs = new String[args.size()];
+
+			for (int i = 0; i < args.size(); i++)
+				select.whereArgs[i] = String.valueOf(args.get(i));
+
+			return select;
+		}
+
 		public ContentValues getItems()
 		{
 			return mItems;
 		}
 
+		/**
+		 * Declares the tables other than {@link #tableName} that the result is read from, e.g., through joins or
+		 * subqueries, so that the cached results are invalidated when any of them changes.
+		 */
+		public Select setDependencies(String... tableNames)
+		{
+			this.dependencies = tableNames;
+			return this;
+		}
+
 		public Select setHaving(String having)
 		{
 			this.having = having;
@@ -108,6 +591,22 @@ public class SQLQuery
 			return this;
 		}
 
+		public Select setSeek(String... columns)
+		{
+			return setSeek(false, columns);
+		}
+
+		/**
+		 * Declares the columns that identify the order of the rows uniquely for keyset pagination. The columns should
+		 * not be nullable and the last one is usually the primary key.
+		 */
+		public Select setSeek(boolean descending, String... columns)
+		{
+			this.seekColumns = columns;
+			this.seekDescending = descending;
+			return this;
+		}
+
 		public Select setTag(String tag)
 		{
 			this.tag = tag;
@@ -118,14 +617,338 @@ public class SQLQuery
 		{
 			this.where = where;
 			this.whereArgs = args;
+			this.typedWhereArgs = null;
 
 			return this;
 		}
 
+		@Override
+		public String toString()
+		{
+			return "Select{tag=" + tag + ", tableName=" + tableName + ", columns=" + Arrays.toString(columns)
+					+ ", where=" + where + ", whereArgs=" + Arrays.toString(whereArgs) + ", groupBy=" + groupBy
+					+ ", having=" + having + ", orderBy=" + orderBy + ", limit=" + limit + "}";
+		}
+
 		public static interface LoadListener
 		{
 			public void onOpen(KuickDb db, Cursor cursor);
 			public void onLoad(KuickDb db, Cursor cursor, ContentValues item);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * A full-text query against a {@link SQLValues.FullTextTable} that reads the matching rows of its content table.
+	 * Run it with {@link KuickDb#search}. Since FTS4 has no ranking of its own, a ranked query scores the matches with
+	 * BM25 over what {@code matchinfo()} returns and orders them by that score; otherwise the order of the query is
+	 * used. The columns are read from the content table and the where clause further filters its rows.
+	 */
+	public static class Match extends Select
+	{
+		public static final String FIELD_DOCID = "docid", FIELD_SNIPPET = "snippet";
+
+		/**
+		 * The BM25 parameters used by SQLite for FTS5.
+		 */
+		public static final double BM25_K1 = 1.2, BM25_B = 0.75;
+
+		public final SQLValues.FullTextTable fullTextTable;
+		public final String query;
+		public boolean ranked = true;
+		public double[] columnWeights;
+		public int snippetColumn = -1;
+		public int snippetTokens;
+		public String snippetStart = "<b>";
+		public String snippetEnd = "</b>";
+		public String snippetEllipsis = "...";
+
+		/**
+		 * @param query   the full-text query in the syntax of FTS4, see {@link #toPrefixQuery(String)} for text
+		 *                typed by users
+		 * @param columns the columns of the content table to read, or none to read all
+		 */
+		public Match(SQLValues.FullTextTable fullTextTable, String query, String... columns)
+		{
+			super(fullTextTable.getContentTable(), columns);
+
+			this.fullTextTable = fullTextTable;
+			this.query = query;
+		}
+
+		/**
+		 * Turns the words of the given text into a query that matches the rows having all of them as the prefix of
+		 * a word, leaving out the characters with a meaning in the query syntax.
+		 */
+		public static String toPrefixQuery(String text)
+		{
+			StringBuilder stringBuilder = new StringBuilder();
+
+			for (String word : text.split("\\s+"))
+			{
+				String term = word.replace("\"", "").replace("*", "");
+
+				if (term.length() == 0)
+					continue;
+
+				if (stringBuilder.length() > 0)
+					stringBuilder.append(" ");
+
+				stringBuilder.append("\"");
+				stringBuilder.append(term);
+				stringBuilder.append("*\"");
+			}
+
+			return stringBuilder.toString();
+		}
+
+		/**
+		 * @param docIds the rows to read, or null to read all the matching rows in the order and limit of this query
+		 * @return the query of the content rows with their docid and, if requested, their snippet
+		 */
+		public Select createContentSelect(List<Long> docIds)
+		{
+			String contentTable = "`" + fullTextTable.getContentTable() + "`";
+			String fullTextName = "`" + fullTextTable.getName() + "`";
+			List<String> columnList = new ArrayList<>();
+
+			if (columns == null || columns.length == 0)
+				columnList.add(contentTable + ".*");
+			else
+				for (String column : columns)
+					columnList.add(column.matches("`?\\w+`?") ? contentTable + ".`" + column.replace("`", "") + "`"
+							: column);
+
+			columnList.add(fullTextName + ".`docid` AS `" + FIELD_DOCID + "`");
+
+			if (snippetTokens != 0)
+				columnList.add("snippet(" + fullTextName + ", " + quote(snippetStart) + ", " + quote(snippetEnd)
+						+ ", " + quote(snippetEllipsis) + ", " + snippetColumn + ", " + snippetTokens + ") AS `"
+						+ FIELD_SNIPPET + "`");
+
+			Select select = createJoin(columnList.toArray(new String[columnList.size()]), docIds);
+
+			if (docIds == null)
+			{
+				select.groupBy = groupBy;
+				select.having = having;
+				select.orderBy = orderBy;
+				select.limit = limit;
+			}
+
+			return select;
+		}
+
+		/**
+		 * @return the query of the docid and the match info of every matching row
+		 */
+		public Select createRankSelect()
+		{
+			return createJoin(new String[]{"`" + fullTextTable.getName() + "`.`docid`",
+					"matchinfo(`" + fullTextTable.getName() + "`, 'pcnalx')"}, null);
+		}
+
+		private Select createJoin(String[] columns, List<Long> docIds)
+		{
+			String contentTable = "`" + fullTextTable.getContentTable() + "`";
+			String fullTextName = "`" + fullTextTable.getName() + "`";
+			StringBuilder whereBuilder = new StringBuilder();
+			List<String> args = new ArrayList<>();
+
+			whereBuilder.append(fullTextName)
+					.append(" MATCH ?");
+			args.add(query);
+
+			if (where != null && where.length() > 0)
+			{
+				whereBuilder.append(" AND (")
+						.append(where)
+						.append(")");
+
+				if (whereArgs != null)
+					args.addAll(Arrays.asList(whereArgs));
+			}
+
+			if (docIds != null)
+			{
+				whereBuilder.append(" AND ")
+						.append(fullTextName)
+						.append(".`docid` IN (");
+
+				for (int i = 0; i < docIds.size(); i++)
+				{
+					if (i > 0)
+						whereBuilder.append(", ");
+
+					whereBuilder.append("?");
+					args.add(String.valueOf(docIds.get(i)));
+				}
+
+				whereBuilder.append(")");
+			}
+
+			List<String> dependencyList = new ArrayList<>();
+
+			dependencyList.add(fullTextTable.getContentTable());
+			dependencyList.add(fullTextTable.getName());
+
+			if (dependencies != null)
+				dependencyList.addAll(Arrays.asList(dependencies));
+
+			Select select = new Select(fullTextName + " JOIN " + contentTable + " ON " + contentTable
+					+ ".`rowid` = " + fullTextName + ".`docid`", columns);
+
+			select.tag = tag;
+			select.loadListener = loadListener;
+			select.relations = relations;
+			select.dependencies = dependencyList.toArray(new String[dependencyList.size()]);
+
+			return select.setWhere(whereBuilder.toString(), args.toArray(new String[args.size()]));
+		}
+
+		/**
+		 * @return the BM25 score of a row from the match info returned by {@link #createRankSelect()}, higher for
+		 * better matches
+		 */
+		public double getScore(byte[] matchInfo)
+		{
+			IntBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+			int phraseCount = buffer.get(0);
+			int columnCount = buffer.get(1);
+			long rowCount = buffer.get(2) & 0xffffffffL;
+			int hitsStart = 3 + columnCount * 2;
+			double score = 0;
+
+			for (int phrase = 0; phrase < phraseCount; phrase++)
+			{
+				for (int column = 0; column < columnCount; column++)
+				{
+					int hits = hitsStart + (phrase * columnCount + column) * 3;
+					long frequency = buffer.get(hits) & 0xffffffffL;
+
+					if (frequency == 0)
+						continue;
+
+					long rowsWithHits = buffer.get(hits + 2) & 0xffffffffL;
+					double averageLength = Math.max(1, buffer.get(3 + column) & 0xffffffffL);
+					double length = buffer.get(3 + columnCount + column) & 0xffffffffL;
+					double weight = columnWeights != null && column < columnWeights.length
+							? columnWeights[column] : 1;
+
+					// Terms that are in more than half of the rows are still counted a little, as in FTS5.
+					double idf = Math.max(1e-6, Math.log((rowCount - rowsWithHits + 0.5) / (rowsWithHits + 0.5)));
+
+					score += weight * idf * (frequency * (BM25_K1 + 1))
+							/ (frequency + BM25_K1 * (1 - BM25_B + BM25_B * length / averageLength));
+				}
+			}
+
+			return score;
+		}
+
+		private static String quote(String value)
+		{
+			return "'" + value.replace("'", "''") + "'";
+		}
+
+		/**
+		 * @param weights the weight of each column of the full-text table in the score, 1 for the missing ones
+		 */
+		public Match setColumnWeights(double... weights)
+		{
+			this.columnWeights = weights;
+			return this;
+		}
+
+		/**
+		 * @param ranked false to read the matches in the order and limit of the query without scoring them
+		 */
+		public Match setRanked(boolean ranked)
+		{
+			this.ranked = ranked;
+			return this;
+		}
+
+		/**
+		 * Adds a snippet of the matching text to every row as {@link #FIELD_SNIPPET}.
+		 *
+		 * @param column the column of the full-text table to take the snippet from, or -1 for the one that matches
+		 * @param tokens the maximum number of tokens in the snippet, up to 64
+		 */
+		public Match setSnippet(int column, int tokens)
+		{
+			this.snippetColumn = column;
+			this.snippetTokens = tokens;
+			return this;
+		}
+
+		public Match setSnippetMarkers(String start, String end, String ellipsis)
+		{
+			this.snippetStart = start;
+			this.snippetEnd = end;
+			this.snippetEllipsis = ellipsis;
+			return this;
+		}
+	}
+
+	/**
+	 * Declares the children of the objects that a {@link Select} loads, so that {@link KuickDb} reads them with a query
+	 * per chunk of parents instead of a query per parent. Once the parents are loaded, the values of
+	 * {@link #parentColumn} are collected and the children whose {@link #childColumn} matches them are read with
+	 * {@code IN (...)} queries based on {@link #select}, which may have a where clause, an order and relations of its
+	 * own. The objects returned by {@link KuickDb#openQuery} are read one at a time and do not load their relations.
+	 */
+	public static abstract class Relation<P, C extends DatabaseObject<?>>
+	{
+		public final String parentColumn;
+		public final String childColumn;
+		public final Select select;
+		public final Class<C> childType;
+
+		/**
+		 * @param parentColumn the column of the parent rows that the children refer to
+		 * @param select       the query of the children, which should read the child column and not be limited
+		 * @param childColumn  the column of the child rows that holds the value of the parent column
+		 * @param childType    the type of the children
+		 */
+		public Relation(String parentColumn, Select select, String childColumn, Class<C> childType)
+		{
+			if (select.limit != null)
+				throw new IllegalArgumentException("The children of " + select.tableName
+						+ " cannot be limited since they are read for many parents at once");
+
+			this.parentColumn = parentColumn;
+			this.select = select;
+			this.childColumn = childColumn;
+			this.childType = childType;
+		}
+
+		/**
+		 * Called for every parent with its children, or with an empty list if it has none. Parents with the same
+		 * value in the parent column share the list.
+		 */
+		public abstract void onLoad(P parent, List<C> children);
+	}
+
+	public static class IndexReport
+	{
+		/**
+		 * Declared indexes that do not exist in the database.
+		 */
+		public final List<SQLValues.Index> missing = new ArrayList<>();
+
+		/**
+		 * Declared indexes whose definition differs from the one in the database.
+		 */
+		public final List<SQLValues.Index> changed = new ArrayList<>();
+
+		/**
+		 * Names of the indexes that exist in the database but are not declared.
+		 */
+		public final List<String> undeclared = new ArrayList<>();
+
+		public boolean isInSync()
+		{
+			return missing.isEmpty() && changed.isEmpty() && undeclared.isEmpty();
+		}
+	}
+}
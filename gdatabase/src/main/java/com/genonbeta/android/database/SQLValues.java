@@ -1,6 +1,14 @@
 package com.genonbeta.android.database;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -11,6 +19,20 @@ import java.util.Map;
 public class SQLValues
 {
 	private final HashMap<String, Table> mIndex = new HashMap<>();
+	private final Map<String, FullTextTable> mFullTextTables = new LinkedHashMap<>();
+
+	/**
+	 * Declares a full-text table that indexes the given columns of a table declared here without keeping a copy of
+	 * them. {@link SQLQuery#createTables} creates it after the tables together with the triggers that keep it in
+	 * sync with the content table.
+	 */
+	public FullTextTable defineFullTextTable(String name, String contentTable, String... columns)
+	{
+		FullTextTable table = new FullTextTable(name, contentTable, columns);
+		getFullTextTables().put(name, table);
+
+		return table;
+	}
 
 	public Table defineTable(String name)
 	{
@@ -28,6 +50,103 @@ public class SQLValues
 		return table;
 	}
 
+	/**
+	 * @return a hash of the tables, columns, conflict keys, indexes and full-text tables declared here that does not
+	 * depend on the order they were declared in, so that a changed schema can be told apart from the one already
+	 * applied
+	 */
+	public String getFingerprint()
+	{
+		List<String> tableNames = new ArrayList<>(getTables().keySet());
+		StringBuilder stringBuilder = new StringBuilder();
+
+		Collections.sort(tableNames);
+
+		for (String tableName : tableNames)
+		{
+			Table table = getTables().get(tableName);
+			List<String> columnNames = new ArrayList<>(table.getColumns().keySet());
+			List<String> indexNames = new ArrayList<>(table.getIndexes().keySet());
+
+			Collections.sort(columnNames);
+			Collections.sort(indexNames);
+
+			stringBuilder.append("table ")
+					.append(tableName)
+					.append('\n');
+
+			for (String columnName : columnNames)
+				stringBuilder.append("column ")
+						.append(table.getColumn(columnName))
+						.append(table.getColumn(columnName).isLargeObject() ? " large" : "")
+						.append('\n');
+
+			if (table.getConflictKeys() != null)
+				stringBuilder.append("conflict ")
+						.append(Arrays.toString(table.getConflictKeys()))
+						.append('\n');
+
+			for (String indexName : indexNames)
+			{
+				Index index = table.getIndexes().get(indexName);
+
+				stringBuilder.append("index ")
+						.append(indexName)
+						.append(index.isUnique() ? " unique" : "")
+						.append(index.isExpression() ? " expression " : " ")
+						.append(Arrays.toString(index.getColumns()))
+						.append(" where ")
+						.append(index.getWhere())
+						.append('\n');
+			}
+		}
+
+		List<String> fullTextNames = new ArrayList<>(getFullTextTables().keySet());
+
+		Collections.sort(fullTextNames);
+
+		for (String fullTextName : fullTextNames)
+		{
+			FullTextTable table = getFullTextTable(fullTextName);
+
+			stringBuilder.append("fulltext ")
+					.append(fullTextName)
+					.append(" content ")
+					.append(table.getContentTable())
+					.append(' ')
+					.append(Arrays.toString(table.getColumns()))
+					.append(" tokenize ")
+					.append(table.getTokenizer())
+					.append('\n');
+		}
+
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(stringBuilder.toString().getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+
+			for (byte b : digest)
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+						.append(Character.forDigit(b & 0xf, 16));
+
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException | UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException("Could not compute the schema fingerprint", e);
+		}
+	}
+
+	public FullTextTable getFullTextTable(String name)
+	{
+		return getFullTextTables().get(name);
+	}
+
+	public Map<String, FullTextTable> getFullTextTables()
+	{
+		return mFullTextTables;
+	}
+
 	public Table getTable(String tableName) {
 		synchronized (mIndex) {
 			return mIndex.get(tableName);
@@ -46,6 +165,7 @@ public class SQLValues
 		private String mValue;
 		private SQLType mType;
 		private boolean mNullable;
+		private boolean mLargeObject;
 
 		public Column(String columnName, Object value)
 		{
@@ -86,6 +206,11 @@ public class SQLValues
 			return mValue;
 		}
 
+		public boolean isLargeObject()
+		{
+			return mLargeObject;
+		}
+
 		public boolean isNullable()
 		{
 			return mNullable;
@@ -97,6 +222,17 @@ public class SQLValues
 			return this;
 		}
 
+		/**
+		 * Keeps the contents of this column out of its rows as a {@link LargeObject} whose id the column holds, so
+		 * the column is created as an INTEGER whatever its type is. The rows only return that id and the contents
+		 * are read and written through the streams of the object, a chunk at a time.
+		 */
+		public Column setLargeObject(boolean largeObject)
+		{
+			mLargeObject = largeObject;
+			return this;
+		}
+
 		public Column setName(String name)
 		{
 			mName = name;
@@ -123,7 +259,153 @@ public class SQLValues
 		@Override
 		public String toString()
 		{
-			return "`" + getName() + "` " + getType().toString() + " " + ((isNullable()) ? "null" : "not null") + ((getExtra() != null) ? " " + mExtra : "");
+			return "`" + getName() + "` " + (isLargeObject() ? SQLType.INTEGER : getType()).toString() + " " + ((isNullable()) ? "null" : "not null") + ((getExtra() != null) ? " " + mExtra : "");
+		}
+	}
+
+	/**
+	 * An FTS4 table with external content: it keeps only the full-text index of the columns of its content table and
+	 * reads their values from there through the rowid, so the content table should not be a WITHOUT ROWID table.
+	 * External content tables need SQLite 3.7.11 (Jelly Bean). Search it with {@link SQLQuery.Match}.
+	 */
+	public static class FullTextTable
+	{
+		private String mName;
+		private String mContentTable;
+		private String[] mColumns;
+		private String mTokenizer;
+
+		public FullTextTable(String name, String contentTable, String... columns)
+		{
+			setName(name);
+			setContentTable(contentTable);
+			setColumns(columns);
+		}
+
+		public String[] getColumns()
+		{
+			return mColumns;
+		}
+
+		public String getContentTable()
+		{
+			return mContentTable;
+		}
+
+		public String getName()
+		{
+			return mName;
+		}
+
+		public String getTokenizer()
+		{
+			return mTokenizer;
+		}
+
+		public FullTextTable setColumns(String... columns)
+		{
+			mColumns = columns;
+			return this;
+		}
+
+		public FullTextTable setContentTable(String contentTable)
+		{
+			mContentTable = contentTable;
+			return this;
+		}
+
+		public FullTextTable setName(String name)
+		{
+			mName = name;
+			return this;
+		}
+
+		/**
+		 * @param tokenizer the tokenizer with its arguments, e.g., {@code porter} or {@code unicode61}, which needs
+		 *                  SQLite 3.7.13 (Lollipop); null for the default one
+		 */
+		public FullTextTable setTokenizer(String tokenizer)
+		{
+			mTokenizer = tokenizer;
+			return this;
+		}
+	}
+
+	/**
+	 * An index of a table. The columns are quoted when the index is created unless the index is made of expressions
+	 * which are written as they are. A partial index needs SQLite 3.8.0 (Lollipop) and an expression index needs
+	 * SQLite 3.9.0 (Marshmallow).
+	 */
+	public static class Index
+	{
+		private String mName;
+		private String[] mColumns;
+		private String mWhere;
+		private boolean mUnique;
+		private boolean mExpression;
+
+		public Index(String name, String... columns)
+		{
+			setName(name);
+			setColumns(columns);
+		}
+
+		public String[] getColumns()
+		{
+			return mColumns;
+		}
+
+		public String getName()
+		{
+			return mName;
+		}
+
+		public String getWhere()
+		{
+			return mWhere;
+		}
+
+		public boolean isExpression()
+		{
+			return mExpression;
+		}
+
+		public boolean isUnique()
+		{
+			return mUnique;
+		}
+
+		public Index setColumns(String... columns)
+		{
+			mColumns = columns;
+			return this;
+		}
+
+		public Index setExpression(boolean expression)
+		{
+			mExpression = expression;
+			return this;
+		}
+
+		public Index setName(String name)
+		{
+			mName = name;
+			return this;
+		}
+
+		public Index setUnique(boolean unique)
+		{
+			mUnique = unique;
+			return this;
+		}
+
+		/**
+		 * Limits the index to the rows matching the given condition, making it a partial index.
+		 */
+		public Index setWhere(String where)
+		{
+			mWhere = where;
+			return this;
 		}
 	}
 
@@ -131,7 +413,9 @@ public class SQLValues
 	{
 		private String mName;
 		private final Map<String, Column> mColumns = new HashMap<>();
+		private final Map<String, Index> mIndexes = new LinkedHashMap<>();
 		private boolean mMayExist;
+		private String[] mConflictKeys;
 
 		public Table(String name)
 		{
@@ -148,22 +432,47 @@ public class SQLValues
 			return mColumns.containsKey(columnName);
 		}
 
+		public boolean hasLargeObjects()
+		{
+			for (Column column : mColumns.values())
+				if (column.isLargeObject())
+					return true;
+
+			return false;
+		}
+
 		public Table define(Column column)
 		{
 			getColumns().put(column.getName(), column);
 			return this;
 		}
 
+		public Table define(Index index)
+		{
+			getIndexes().put(index.getName(), index);
+			return this;
+		}
+
 		public Column getColumn(String name)
 		{
 			return getColumns().get(name);
 		}
 
+		public String[] getConflictKeys()
+		{
+			return mConflictKeys;
+		}
+
 		public Map<String, Column> getColumns()
 		{
 			return mColumns;
 		}
 
+		public Map<String, Index> getIndexes()
+		{
+			return mIndexes;
+		}
+
 		public String getName()
 		{
 			return mName;
@@ -174,6 +483,19 @@ public class SQLValues
 			return mMayExist;
 		}
 
+		/**
+		 * Declares the columns that identify a row of this table. {@link SQLQuery#createIndexes} makes them unique and
+		 * {@link KuickDb#publish} writes the objects of this table with a single upsert statement keyed on them
+		 * where SQLite supports it. The row is looked up by these columns first to pick between
+		 * {@link DatabaseObject#onCreateObject} and {@link DatabaseObject#onUpdateObject}, and the
+		 * {@link DatabaseObject#getWhere()} of the objects should select the row by them.
+		 */
+		public Table setConflictKeys(String... columns)
+		{
+			mConflictKeys = columns;
+			return this;
+		}
+
 		public void setName(String mName)
 		{
 			this.mName = mName;
@@ -0,0 +1,301 @@
+package com.genonbeta.android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps compiled {@link SQLiteStatement}s of a single database connection in least-recently-used order so that
+ * repeated writes with the same shape skip building and compiling the SQL text. Users should hold the lock of this
+ * object from {@link #acquire(Key)} until the statement has been executed and its bindings have been cleared.
+ */
+public class StatementCache
+{
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final SQLiteDatabase mDatabase;
+    private final LinkedHashMap<Key, SQLiteStatement> mStatements = new LinkedHashMap<>(16, 0.75f, true);
+    private int mCapacity;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    public StatementCache(SQLiteDatabase database, int capacity)
+    {
+        mDatabase = database;
+        mCapacity = capacity;
+    }
+
+    public synchronized SQLiteStatement acquire(Key key)
+    {
+        SQLiteStatement statement = mStatements.get(key);
+
+        if (statement != null) {
+            mHitCount++;
+            return statement;
+        }
+
+        mMissCount++;
+        statement = mDatabase.compileStatement(key.toSql());
+        mStatements.put(key, statement);
+        trimToCapacity();
+
+        return statement;
+    }
+
+    public synchronized void clear()
+    {
+        for (SQLiteStatement statement : mStatements.values())
+            statement.close();
+
+        mStatements.clear();
+    }
+
+    public int getCapacity()
+    {
+        return mCapacity;
+    }
+
+    public SQLiteDatabase getDatabase()
+    {
+        return mDatabase;
+    }
+
+    public synchronized long getEvictionCount()
+    {
+        return mEvictionCount;
+    }
+
+    public synchronized long getHitCount()
+    {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return mMissCount;
+    }
+
+    public synchronized int getSize()
+    {
+        return mStatements.size();
+    }
+
+    public synchronized void setCapacity(int capacity)
+    {
+        mCapacity = capacity;
+        trimToCapacity();
+    }
+
+    private void trimToCapacity()
+    {
+        Iterator<Map.Entry<Key, SQLiteStatement>> iterator = mStatements.entrySet().iterator();
+
+        while (mStatements.size() > Math.max(mCapacity, 1) && iterator.hasNext()) {
+            iterator.next().getValue().close();
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    public static class Key
+    {
+        public static final int TYPE_INSERT = 1;
+        public static final int TYPE_UPDATE = 2;
+        public static final int TYPE_DELETE = 3;
+        public static final int TYPE_UPSERT = 4;
+
+        public final int type;
+        public final String tableName;
+        public final String[] columns;
+        public final String where;
+        public final int rowCount;
+        public final String[] conflictKeys;
+
+        private final int mHashCode;
+
+        public Key(int type, String tableName, String[] columns, String where)
+        {
+            this(type, tableName, columns, where, 1);
+        }
+
+        public Key(int type, String tableName, String[] columns, String where, int rowCount)
+        {
+            this(type, tableName, columns, where, rowCount, null);
+        }
+
+        public Key(int type, String tableName, String[] columns, String where, int rowCount, String[] conflictKeys)
+        {
+            this.type = type;
+            this.tableName = tableName;
+            this.columns = columns;
+            this.where = where;
+            this.rowCount = rowCount;
+            this.conflictKeys = conflictKeys;
+
+            int hashCode = type;
+            hashCode = 31 * hashCode + tableName.hashCode();
+            hashCode = 31 * hashCode + Arrays.hashCode(columns);
+            hashCode = 31 * hashCode + (where == null ? 0 : where.hashCode());
+            hashCode = 31 * hashCode + rowCount;
+            hashCode = 31 * hashCode + Arrays.hashCode(conflictKeys);
+            mHashCode = hashCode;
+        }
+
+        public static Key forDelete(String tableName, String where)
+        {
+            return new Key(TYPE_DELETE, tableName, null, where);
+        }
+
+        public static Key forInsert(String tableName, String[] columns)
+        {
+            return new Key(TYPE_INSERT, tableName, columns, null);
+        }
+
+        public static Key forInsert(String tableName, String[] columns, int rowCount)
+        {
+            return new Key(TYPE_INSERT, tableName, columns, null, rowCount);
+        }
+
+        public static Key forUpsert(String tableName, String[] columns, String[] conflictKeys)
+        {
+            return new Key(TYPE_UPSERT, tableName, columns, null, 1, conflictKeys);
+        }
+
+        public static Key forUpdate(String tableName, String[] columns, String where)
+        {
+            return new Key(TYPE_UPDATE, tableName, columns, where);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+
+            return type == other.type && mHashCode == other.mHashCode && rowCount == other.rowCount
+                    && tableName.equals(other.tableName)
+                    && Arrays.equals(columns, other.columns)
+                    && Arrays.equals(conflictKeys, other.conflictKeys)
+                    && (where == null ? other.where == null : where.equals(other.where));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return mHashCode;
+        }
+
+        public String toSql()
+        {
+            StringBuilder sql = new StringBuilder();
+
+            switch (type) {
+                case TYPE_INSERT:
+                case TYPE_UPSERT:
+                    sql.append("INSERT INTO `")
+                            .append(tableName)
+                            .append("` (");
+
+                    for (int i = 0; i < columns.length; i++) {
+                        if (i > 0)
+                            sql.append(", ");
+
+                        sql.append("`")
+                                .append(columns[i])
+                                .append("`");
+                    }
+
+                    sql.append(") VALUES ");
+
+                    for (int row = 0; row < rowCount; row++) {
+                        sql.append(row > 0 ? ", (" : "(");
+
+                        for (int i = 0; i < columns.length; i++)
+                            sql.append(i > 0 ? ", ?" : "?");
+
+                        sql.append(")");
+                    }
+
+                    if (type == TYPE_UPSERT)
+                        appendConflictClause(sql, columns, conflictKeys);
+                    break;
+                case TYPE_UPDATE:
+                    sql.append("UPDATE `")
+                            .append(tableName)
+                            .append("` SET ");
+
+                    for (int i = 0; i < columns.length; i++) {
+                        if (i > 0)
+                            sql.append(", ");
+
+                        sql.append("`")
+                                .append(columns[i])
+                                .append("` = ?");
+                    }
+
+                    appendWhere(sql, where);
+                    break;
+                case TYPE_DELETE:
+                    sql.append("DELETE FROM `")
+                            .append(tableName)
+                            .append("`");
+
+                    appendWhere(sql, where);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown statement type: " + type);
+            }
+
+            return sql.toString();
+        }
+
+        private static void appendConflictClause(StringBuilder sql, String[] columns, String[] conflictKeys)
+        {
+            sql.append(" ON CONFLICT (");
+
+            for (int i = 0; i < conflictKeys.length; i++) {
+                if (i > 0)
+                    sql.append(", ");
+
+                sql.append("`")
+                        .append(conflictKeys[i])
+                        .append("`");
+            }
+
+            sql.append(") DO ");
+
+            int updated = 0;
+
+            for (String column : columns) {
+                if (Arrays.asList(conflictKeys).contains(column))
+                    continue;
+
+                sql.append(updated++ > 0 ? ", `" : "UPDATE SET `")
+                        .append(column)
+                        .append("` = excluded.`")
+                        .append(column)
+                        .append("`");
+            }
+
+            if (updated == 0)
+                sql.append("NOTHING");
+        }
+
+        private static void appendWhere(StringBuilder sql, String where)
+        {
+            if (where != null && where.length() > 0)
+                sql.append(" WHERE ")
+                        .append(where);
+        }
+    }
+}
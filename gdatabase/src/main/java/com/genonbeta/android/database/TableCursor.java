@@ -0,0 +1,134 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the rows of a {@link SQLQuery.Select} one at a time from the open {@link Cursor} instead of loading all of
+ * them into memory. When the row buffer is reused, the {@link ContentValues} returned by {@link #next()} is only
+ * valid until the next call and should not be kept. The cursor is closed after the last row is read; callers that
+ * stop early should call {@link #close()} themselves.
+ */
+public class TableCursor implements Iterator<ContentValues>, Iterable<ContentValues>, Closeable
+{
+    private final KuickDb mKuick;
+    private final SQLQuery.Select mSelect;
+    private final Cursor mCursor;
+    private final boolean mReuseItem;
+    private String[] mColumns;
+    private int[] mTypes;
+    private ContentValues mItem;
+    private boolean mHasNext;
+
+    public TableCursor(KuickDb kuick, SQLQuery.Select select, Cursor cursor, boolean reuseItem)
+    {
+        mKuick = kuick;
+        mSelect = select;
+        mCursor = cursor;
+        mReuseItem = reuseItem;
+        mHasNext = cursor.moveToFirst();
+
+        if (mHasNext) {
+            if (select.loadListener != null)
+                select.loadListener.onOpen(kuick, cursor);
+
+            int columnCount = cursor.getColumnCount();
+            mColumns = new String[columnCount];
+            mTypes = new int[columnCount];
+
+            for (int i = 0; i < columnCount; i++) {
+                mColumns[i] = cursor.getColumnName(i);
+                mTypes[i] = cursor.getType(i);
+            }
+        } else
+            close();
+    }
+
+    @Override
+    public void close()
+    {
+        mHasNext = false;
+
+        if (!mCursor.isClosed())
+            mCursor.close();
+    }
+
+    public Cursor getCursor()
+    {
+        return mCursor;
+    }
+
+    public SQLQuery.Select getSelect()
+    {
+        return mSelect;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return mHasNext;
+    }
+
+    @Override
+    public Iterator<ContentValues> iterator()
+    {
+        return this;
+    }
+
+    @Override
+    public ContentValues next()
+    {
+        if (!mHasNext)
+            throw new NoSuchElementException();
+
+        ContentValues item;
+
+        if (!mReuseItem)
+            item = new ContentValues(mColumns.length);
+        else if (mItem == null)
+            item = mItem = new ContentValues(mColumns.length);
+        else {
+            item = mItem;
+            item.clear();
+        }
+
+        for (int i = 0; i < mColumns.length; i++) {
+            String columnName = mColumns[i];
+            switch (mTypes[i]) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    item.put(columnName, mCursor.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                case Cursor.FIELD_TYPE_NULL:
+                    item.put(columnName, mCursor.getString(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    item.put(columnName, mCursor.getFloat(i));
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    item.put(columnName, mCursor.getBlob(i));
+                    break;
+            }
+        }
+
+        if (mSelect.loadListener != null)
+            mSelect.loadListener.onLoad(mKuick, mCursor, item);
+
+        mHasNext = mCursor.moveToNext();
+
+        if (!mHasNext)
+            close();
+
+        return item;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("Rows cannot be removed through a cursor");
+    }
+}
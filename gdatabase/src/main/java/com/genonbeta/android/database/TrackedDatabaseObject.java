@@ -0,0 +1,19 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+
+/**
+ * An object whose values are kept as a snapshot when {@link KuickDb} reads it, so that updating or publishing it
+ * later only writes the columns that changed since then, and nothing at all when none did. The snapshot is also
+ * renewed after the object is written one by one. Both the snapshot and the changes are taken from
+ * {@link #getValues()}, also for the objects that have a {@link RowMapper}.
+ * <p>
+ * An object with a snapshot is assumed to still have its row. If the row may have been removed since, or a
+ * transaction that wrote the object rolled back, set the snapshot to null so the whole object is written again.
+ */
+public interface TrackedDatabaseObject<T> extends DatabaseObject<T>
+{
+    ContentValues getSnapshot();
+
+    void setSnapshot(ContentValues snapshot);
+}
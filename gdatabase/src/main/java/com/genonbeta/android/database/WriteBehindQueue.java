@@ -0,0 +1,572 @@
+package com.genonbeta.android.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues the writes of objects and commits them together in a single transaction once the queue reaches the batch
+ * size or its oldest write has waited for the latency budget, so that many small writes cost a single commit. A write
+ * replaces the one queued for the same object if it has not been committed yet. Two different objects are only
+ * taken for the same one when neither of them is inserted and their {@link DatabaseObject#getWhere()} has all of its
+ * arguments assigned, so new objects whose ids are not known yet are never merged. {@link #flush()} works as a
+ * durability barrier and returns once everything queued before it is committed.
+ * <p>
+ * The values and the where clause of an object are taken when it is queued, so the caller may keep changing it. The
+ * hooks of the object still run on the flush thread, and what they change on the object is not written.
+ * <p>
+ * When the transaction of a flush fails, its writes are retried one by one, each in a transaction of its own, so
+ * that a write that cannot succeed does not hold back the others. The writes that still fail are queued again and
+ * retried after the latency budget, unless a newer write for the same object has been queued since, which replaces
+ * them as usual. A write that has failed {@link #setMaxAttempts(int) the maximum number of times} is dropped and
+ * handed to the {@link DeadLetterListener}, if there is one.
+ */
+public class WriteBehindQueue
+{
+    public static final String TAG = WriteBehindQueue.class.getSimpleName();
+
+    public static final int OPERATION_INSERT = 1;
+    public static final int OPERATION_UPDATE = 2;
+    public static final int OPERATION_PUBLISH = 3;
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    private final KuickDb mKuick;
+    private final int mBatchSize;
+    private final long mLatencyMillis;
+    private final ScheduledExecutorService mExecutor;
+    private final Object mLock = new Object();
+    private Map<String, PendingWrite> mPending = new LinkedHashMap<>();
+    private long mOldestQueuedTime;
+    private boolean mFlushScheduled;
+    private volatile boolean mBroadcastOnFlush = true;
+    private volatile int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile DeadLetterListener mDeadLetterListener;
+    private long mSequence;
+    private long mFlushCount;
+    private long mFailedFlushCount;
+    private long mWrittenCount;
+    private long mDroppedCount;
+    private long mCoalescedCount;
+    private long mMaxLagMillis;
+    private long mLastFlushMillis;
+
+    private final Callable<Void> mFlushTask = new Callable<Void>()
+    {
+        @Override
+        public Void call()
+        {
+            runFlush();
+            return null;
+        }
+    };
+
+    public WriteBehindQueue(KuickDb kuick, int batchSize, long latencyMillis)
+    {
+        mKuick = kuick;
+        mBatchSize = batchSize;
+        mLatencyMillis = latencyMillis;
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "KuickDb write-behind");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static String createKey(SQLQuery.Select select)
+    {
+        return select.tableName + '\u0000' + select.where + '\u0000' + Arrays.toString(select.whereArgs);
+    }
+
+    private void enqueue(DatabaseObject<?> object, int operation)
+    {
+        PendingWrite write = new PendingWrite(object, operation);
+        boolean flushNow = false;
+        boolean schedule = false;
+
+        synchronized (mLock) {
+            PendingWrite pending = mPending.get(write.key);
+
+            if (pending != null && pending.canCoalesce(write)) {
+                // The earlier write has not reached the database yet, so only the last state of the object matters.
+                pending.replace(write);
+                mCoalescedCount++;
+            } else {
+                if (mPending.isEmpty()) {
+                    mOldestQueuedTime = SystemClock.elapsedRealtime();
+                    schedule = !mFlushScheduled;
+                    mFlushScheduled = true;
+                }
+
+                put(mPending, write);
+            }
+
+            if (mPending.size() >= mBatchSize)
+                flushNow = true;
+        }
+
+        if (flushNow)
+            mExecutor.submit(mFlushTask);
+        else if (schedule)
+            mExecutor.schedule(mFlushTask, mLatencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Commits everything queued so far and waits until it is done.
+     *
+     * @throws IllegalStateException when some of the writes could not be committed, in which case they are queued
+     *                               again or dropped as described above
+     */
+    public void flush()
+    {
+        long failedFlushes;
+
+        synchronized (mLock) {
+            failedFlushes = mFailedFlushCount;
+        }
+
+        Future<Void> future = mExecutor.submit(mFlushTask);
+
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the writes to be committed", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not commit the writes", e.getCause());
+        }
+
+        synchronized (mLock) {
+            if (mFailedFlushCount != failedFlushes)
+                throw new IllegalStateException("Could not commit the writes, see the log for the cause");
+        }
+    }
+
+    public long getCoalescedCount()
+    {
+        synchronized (mLock) {
+            return mCoalescedCount;
+        }
+    }
+
+    /**
+     * @return the number of writes that were dropped after failing {@link #setMaxAttempts(int) too many times}
+     */
+    public long getDroppedCount()
+    {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    public long getFailedFlushCount()
+    {
+        synchronized (mLock) {
+            return mFailedFlushCount;
+        }
+    }
+
+    public long getFlushCount()
+    {
+        synchronized (mLock) {
+            return mFlushCount;
+        }
+    }
+
+    /**
+     * @return how long the last flush took in milliseconds
+     */
+    public long getLastFlushMillis()
+    {
+        synchronized (mLock) {
+            return mLastFlushMillis;
+        }
+    }
+
+    /**
+     * @return how long the oldest write waiting in the queue has been there, or zero if the queue is empty
+     */
+    public long getLagMillis()
+    {
+        synchronized (mLock) {
+            return mPending.isEmpty() ? 0 : SystemClock.elapsedRealtime() - mOldestQueuedTime;
+        }
+    }
+
+    /**
+     * @return the longest time a write waited before it was committed
+     */
+    public long getMaxLagMillis()
+    {
+        synchronized (mLock) {
+            return mMaxLagMillis;
+        }
+    }
+
+    public int getPendingCount()
+    {
+        synchronized (mLock) {
+            return mPending.size();
+        }
+    }
+
+    public long getWrittenCount()
+    {
+        synchronized (mLock) {
+            return mWrittenCount;
+        }
+    }
+
+    public <T, V extends DatabaseObject<T>> void insert(V object)
+    {
+        enqueue(object, OPERATION_INSERT);
+    }
+
+    public <T, V extends DatabaseObject<T>> void publish(V object)
+    {
+        enqueue(object, OPERATION_PUBLISH);
+    }
+
+    private static boolean isKeyAssigned(SQLQuery.Select select)
+    {
+        if (select.whereArgs == null || select.whereArgs.length == 0)
+            return false;
+
+        for (String arg : select.whereArgs)
+            if (arg == null)
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Adds the write under its key, or under a key of its own if another write that it could not be merged with is
+     * already there.
+     */
+    private void put(Map<String, PendingWrite> pending, PendingWrite write)
+    {
+        pending.put(pending.containsKey(write.key) ? write.key + '\u0000' + mSequence++ : write.key, write);
+    }
+
+    private void runFlush()
+    {
+        List<PendingWrite> writes;
+        long queuedTime;
+
+        synchronized (mLock) {
+            mFlushScheduled = false;
+
+            if (mPending.isEmpty())
+                return;
+
+            writes = new ArrayList<>(mPending.values());
+            queuedTime = mOldestQueuedTime;
+            mPending = new LinkedHashMap<>();
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+        List<PendingWrite> failedWrites = new ArrayList<>();
+        int writtenCount = 0;
+
+        try {
+            write(writes);
+            writtenCount = writes.size();
+        } catch (Exception e) {
+            Log.e(TAG, "Could not commit " + writes.size() + " queued writes, they are retried one by one", e);
+
+            for (PendingWrite write : writes) {
+                // The snapshots taken by the rolled back writes no longer match the rows.
+                write.object.setSnapshot(null);
+
+                try {
+                    // A single write has already failed on its own.
+                    if (writes.size() == 1)
+                        throw e;
+
+                    write(Collections.singletonList(write));
+                    writtenCount++;
+                } catch (Exception writeException) {
+                    write.object.setSnapshot(null);
+                    write.attempts++;
+                    write.error = writeException;
+                    failedWrites.add(write);
+                }
+            }
+        }
+
+        long endTime = SystemClock.elapsedRealtime();
+        List<PendingWrite> droppedWrites = new ArrayList<>();
+
+        synchronized (mLock) {
+            mFlushCount++;
+            mLastFlushMillis = endTime - startTime;
+            mMaxLagMillis = Math.max(mMaxLagMillis, endTime - queuedTime);
+            mWrittenCount += writtenCount;
+
+            if (!failedWrites.isEmpty()) {
+                List<PendingWrite> retriedWrites = new ArrayList<>();
+                mFailedFlushCount++;
+
+                for (PendingWrite write : failedWrites)
+                    (write.attempts >= mMaxAttempts ? droppedWrites : retriedWrites).add(write);
+
+                mDroppedCount += droppedWrites.size();
+                requeue(retriedWrites, queuedTime);
+            }
+
+            // Writes that arrived during the flush need a deadline of their own, and the failed ones a full one so
+            // that a lasting failure is not retried in a busy loop.
+            if (!mPending.isEmpty() && !mFlushScheduled) {
+                mFlushScheduled = true;
+                mExecutor.schedule(mFlushTask, failedWrites.isEmpty()
+                        ? Math.max(0, mLatencyMillis - (endTime - mOldestQueuedTime)) : mLatencyMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        DeadLetterListener deadLetterListener = mDeadLetterListener;
+
+        for (PendingWrite write : droppedWrites) {
+            Log.e(TAG, "Dropped a write to " + write.object.getWhere().tableName + " after " + write.attempts
+                    + " failed attempts", write.error);
+
+            if (deadLetterListener != null)
+                deadLetterListener.onWriteDropped(write.object.object, write.operation, write.error);
+        }
+
+        if (writtenCount > 0 && mBroadcastOnFlush)
+            mKuick.broadcast();
+    }
+
+    /**
+     * Puts the writes of a failed flush back in front of the ones queued since, which are newer and so replace them.
+     */
+    private void requeue(List<PendingWrite> writes, long queuedTime)
+    {
+        if (writes.isEmpty())
+            return;
+
+        Map<String, PendingWrite> pending = new LinkedHashMap<>();
+
+        for (PendingWrite write : writes)
+            put(pending, write);
+
+        for (PendingWrite write : mPending.values()) {
+            PendingWrite failedWrite = pending.get(write.key);
+
+            if (failedWrite != null && failedWrite.canCoalesce(write))
+                failedWrite.replace(write);
+            else
+                put(pending, write);
+        }
+
+        mPending = pending;
+        mOldestQueuedTime = queuedTime;
+    }
+
+    /**
+     * Whether {@link KuickDb#broadcast()} should be called after each successful flush. Enabled by default.
+     */
+    public void setBroadcastOnFlush(boolean broadcastOnFlush)
+    {
+        mBroadcastOnFlush = broadcastOnFlush;
+    }
+
+    /**
+     * Sets the listener that receives the writes that are dropped after failing too many times.
+     */
+    public void setDeadLetterListener(DeadLetterListener listener)
+    {
+        mDeadLetterListener = listener;
+    }
+
+    /**
+     * Sets how many times a write is tried before it is dropped. {@link #DEFAULT_MAX_ATTEMPTS} by default.
+     */
+    public void setMaxAttempts(int maxAttempts)
+    {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("A write should be tried at least once: " + maxAttempts);
+
+        mMaxAttempts = maxAttempts;
+    }
+
+    /**
+     * Commits the queued writes and stops the queue.
+     */
+    public void shutdown()
+    {
+        flush();
+        mExecutor.shutdown();
+    }
+
+    public <T, V extends DatabaseObject<T>> void update(V object)
+    {
+        enqueue(object, OPERATION_UPDATE);
+    }
+
+    /**
+     * Writes in a transaction of their own.
+     */
+    private void write(List<PendingWrite> writes)
+    {
+        SQLiteDatabase db = mKuick.getWritableDatabase();
+        mKuick.beginTransaction(db);
+
+        try {
+            for (PendingWrite write : writes) {
+                switch (write.operation) {
+                    case OPERATION_INSERT:
+                        if (mKuick.insert(db, write.object, null, null) == -1)
+                            throw new IllegalStateException("Could not insert into "
+                                    + write.object.getWhere().tableName);
+                        break;
+                    case OPERATION_UPDATE:
+                        mKuick.update(db, write.object, null, null);
+                        break;
+                    default:
+                        mKuick.publish(db, write.object, null, null);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            mKuick.endTransaction(db);
+        }
+    }
+
+    public interface DeadLetterListener
+    {
+        /**
+         * Called on the flush thread with the object whose write was dropped and the error of its last attempt.
+         */
+        void onWriteDropped(DatabaseObject<?> object, int operation, Exception error);
+    }
+
+    private static class PendingWrite
+    {
+        final String key;
+        QueuedObject object;
+        int operation;
+        int attempts;
+        Exception error;
+
+        PendingWrite(DatabaseObject<?> object, int operation)
+        {
+            this.object = new QueuedObject(object);
+            this.operation = operation;
+            this.key = createKey(this.object.where);
+        }
+
+        boolean canCoalesce(PendingWrite write)
+        {
+            if (object.object == write.object.object)
+                return true;
+
+            // An insert always creates a row of its own, and an object without its key may not have a row yet.
+            return operation != OPERATION_INSERT && write.operation != OPERATION_INSERT
+                    && isKeyAssigned(write.object.where);
+        }
+
+        void replace(PendingWrite write)
+        {
+            this.object = write.object;
+            this.operation = this.operation == write.operation ? write.operation : OPERATION_PUBLISH;
+            this.attempts = 0;
+            this.error = null;
+        }
+    }
+
+    /**
+     * Stands for a queued object with the values and the where clause it had when it was queued. The snapshot of a
+     * {@link TrackedDatabaseObject} is kept in sync with the object, as the row is written with these values.
+     */
+    private static class QueuedObject implements TrackedDatabaseObject<Object>
+    {
+        final DatabaseObject<Object> object;
+        final ContentValues values;
+        final SQLQuery.Select where;
+        ContentValues snapshot;
+
+        @SuppressWarnings("unchecked")
+        QueuedObject(DatabaseObject<?> object)
+        {
+            this.object = (DatabaseObject<Object>) object;
+            this.values = object.getValues();
+            this.where = object.getWhere();
+            this.snapshot = object instanceof TrackedDatabaseObject
+                    ? ((TrackedDatabaseObject<?>) object).getSnapshot() : null;
+        }
+
+        @Override
+        public ContentValues getSnapshot()
+        {
+            return snapshot;
+        }
+
+        @Override
+        public ContentValues getValues()
+        {
+            return new ContentValues(values);
+        }
+
+        @Override
+        public SQLQuery.Select getWhere()
+        {
+            return where;
+        }
+
+        @Override
+        public void onCreateObject(SQLiteDatabase db, KuickDb kuick, Object parent, Progress.Listener listener)
+        {
+            object.onCreateObject(db, kuick, parent, listener);
+        }
+
+        @Override
+        public void onRemoveObject(SQLiteDatabase db, KuickDb kuick, Object parent, Progress.Listener listener)
+        {
+            object.onRemoveObject(db, kuick, parent, listener);
+        }
+
+        @Override
+        public void onUpdateObject(SQLiteDatabase db, KuickDb kuick, Object parent, Progress.Listener listener)
+        {
+            object.onUpdateObject(db, kuick, parent, listener);
+        }
+
+        @Override
+        public void reconstruct(SQLiteDatabase db, KuickDb kuick, ContentValues item)
+        {
+            object.reconstruct(db, kuick, item);
+        }
+
+        @Override
+        public void setSnapshot(ContentValues snapshot)
+        {
+            this.snapshot = snapshot;
+
+            if (object instanceof TrackedDatabaseObject)
+                ((TrackedDatabaseObject<?>) object).setSnapshot(snapshot);
+        }
+    }
+}
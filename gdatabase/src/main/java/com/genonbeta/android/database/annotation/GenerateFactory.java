@@ -0,0 +1,18 @@
+package com.genonbeta.android.database.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes the gdatabase-compiler annotation processor generate an
+ * {@link com.genonbeta.android.database.ObjectFactory} named {@code <ClassName>_ObjectFactory} next to the annotated
+ * {@link com.genonbeta.android.database.DatabaseObject}. The class should have a no-argument constructor that is
+ * visible to its package.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateFactory
+{
+}
@@ -0,0 +1,19 @@
+package com.genonbeta.android.database.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes the gdatabase-compiler annotation processor generate a {@link com.genonbeta.android.database.RowMapper}
+ * named {@code <ClassName>_RowMapper} for the fields annotated with {@link MapColumn}. Once it exists,
+ * {@link com.genonbeta.android.database.KuickDb} binds and reads those fields directly: the mapped columns replace
+ * what {@code getValues()} returns when the object is written, and {@code reconstruct(db, kuick, item)} is not called
+ * when it is read. Objects that load related data while they are being reconstructed should not use it.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateMapper
+{
+}
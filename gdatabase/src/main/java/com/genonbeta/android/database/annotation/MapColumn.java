@@ -0,0 +1,17 @@
+package com.genonbeta.android.database.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a field to a column for {@link GenerateMapper}. Primitive, boxed numeric, boolean, {@link String} and
+ * {@code byte[]} fields are supported. The field should not be private, static or final.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface MapColumn
+{
+    String value();
+}
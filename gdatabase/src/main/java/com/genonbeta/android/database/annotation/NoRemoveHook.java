@@ -0,0 +1,20 @@
+package com.genonbeta.android.database.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares that {@code onRemoveObject} of the annotated {@link com.genonbeta.android.database.DatabaseObject} does
+ * nothing, so {@link com.genonbeta.android.database.KuickDb} never calls it when it removes objects in bulk. The rows
+ * are deleted in chunks with a single statement each, and {@code removeAsObject} deletes them with the predicate of
+ * the query without loading them, as long as the objects are removed from the table they are read from.
+ */
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface NoRemoveHook
+{
+}
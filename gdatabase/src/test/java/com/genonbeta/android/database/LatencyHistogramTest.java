@@ -0,0 +1,122 @@
+package com.genonbeta.android.database;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest
+{
+    @Test
+    public void reportsZeroWhenEmpty()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void keepsSmallValuesExact()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 0; i < 8; i++)
+            histogram.record(i);
+
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(6, histogram.getPercentile(87.5));
+        assertEquals(7, histogram.getPercentile(100));
+        assertEquals(3.5, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void reportsPercentilesWithinBucketError()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10000];
+
+        // Spread over several orders of magnitude so that many bucket widths are used.
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.pow(10, 1 + 6.0 * i / values.length);
+            histogram.record(values[i]);
+        }
+
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{1, 10, 25, 50, 75, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long reported = histogram.getPercentile(percentile);
+
+            assertTrue(percentile + ": " + reported + " < " + expected, reported >= expected);
+            assertTrue(percentile + ": " + reported + " > " + expected, reported <= expected * 1.125);
+        }
+    }
+
+    @Test
+    public void neverReportsMoreThanTheMaximum()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+
+        assertEquals(1000, histogram.getPercentile(50));
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    public void coversTheWholeRange()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void resetsAllCounts()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getSum());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void countsConcurrentRecords() throws InterruptedException
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int offset = i;
+
+            threads[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 10000; j++)
+                        histogram.record(offset * 10000 + j);
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(39999, histogram.getMax());
+        assertEquals(39999L * 40000 / 2, histogram.getSum());
+    }
+}